@@ -2,11 +2,14 @@ package be.jorisg.ultrastarorganizer;
 
 import be.jorisg.ultrastarorganizer.command.CliCommands;
 import be.jorisg.ultrastarorganizer.domain.Library;
+import be.jorisg.ultrastarorganizer.domain.LibraryWatcher;
+import be.jorisg.ultrastarorganizer.domain.TrackInfo;
 import org.fusesource.jansi.AnsiConsole;
 import org.jline.reader.LineReader;
 import picocli.CommandLine;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 
 public class UltrastarOrganizer {
@@ -14,8 +17,11 @@ public class UltrastarOrganizer {
     public static File workDir;
     public static PrintWriter out;
     public static LineReader in;
+    public static int threads = Runtime.getRuntime().availableProcessors();
+    public static boolean watch = false;
 
     private static Library library;
+    private static LibraryWatcher watcher;
 
     public static Library library() {
         if (library == null) {
@@ -24,11 +30,57 @@ public class UltrastarOrganizer {
         return library;
     }
 
+    /**
+     * The library if it was already loaded, null otherwise.
+     */
+    public static Library loadedLibrary() {
+        return library;
+    }
+
     public static Library refresh() {
-        library = new Library(workDir);
+        // the watcher keeps the library up to date, no need to load it again
+        if (watcher != null) {
+            TrackInfo.checkFilesAgain();
+            return library;
+        }
+
+        library = new Library(workDir, threads, true);
+
+        if (watch) {
+            try {
+                watcher = new LibraryWatcher(library, UltrastarOrganizer::printAbove);
+                watcher.start();
+            } catch (IOException e) {
+                out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: Failed to watch library: " + e.getMessage() + "|@"));
+            }
+        }
         return library;
     }
 
+    /**
+     * Print a message from a background thread without breaking the line the user is typing.
+     */
+    private static void printAbove(String message) {
+        if (in != null) {
+            in.printAbove(message);
+            return;
+        }
+        out.println(message);
+        out.flush();
+    }
+
+    public static void close() {
+        if (watcher == null) {
+            return;
+        }
+
+        try {
+            watcher.close();
+        } catch (IOException ignored) {
+        }
+        watcher = null;
+    }
+
     //
 
     public static void main(String[] args) {
@@ -11,12 +11,14 @@ import be.jorisg.ultrastarorganizer.commands.minimize.MinimizeCommand;
 import be.jorisg.ultrastarorganizer.commands.reformat.ReformatCommand;
 import be.jorisg.ultrastarorganizer.commands.search.SearchCommand;
 import be.jorisg.ultrastarorganizer.commands.stats.StatsCommand;
+import be.jorisg.ultrastarorganizer.commands.sync.SyncCommand;
 import be.jorisg.ultrastarorganizer.commands.tracklist.TracklistCommand;
 import org.apache.commons.io.IOUtils;
 import org.jline.console.SystemRegistry;
 import org.jline.console.impl.SystemRegistryImpl;
 import org.jline.reader.*;
 import org.jline.reader.impl.DefaultParser;
+import org.jline.reader.impl.completer.AggregateCompleter;
 import org.jline.terminal.Size;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
@@ -54,6 +56,7 @@ import java.util.concurrent.Callable;
                 StatsCommand.class,
                 MediaCommand.class,
                 MergeCommand.class,
+                SyncCommand.class,
                 DoctorCommand.class
         })
 public class CliCommands implements Callable<Integer> {
@@ -61,6 +64,12 @@ public class CliCommands implements Callable<Integer> {
     @CommandLine.Option(names = {"--workdir"}, description = "The working directory")
     private File workDir;
 
+    @CommandLine.Option(names = {"--threads"}, description = "The amount of threads used to load the library.")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--watch"}, description = "Keep the library in memory and update it when files change.")
+    private boolean watch;
+
     private Terminal terminal;
     private LineReader in;
 
@@ -72,6 +81,8 @@ public class CliCommands implements Callable<Integer> {
 
         // set global workdir constant
         UltrastarOrganizer.workDir = workDir;
+        UltrastarOrganizer.threads = threads;
+        UltrastarOrganizer.watch = watch;
 
         // setup terminal
         SystemRegistry systemRegistry = setup();
@@ -107,6 +118,7 @@ public class CliCommands implements Callable<Integer> {
             }
         }
 
+        UltrastarOrganizer.close();
         systemRegistry.close();
         terminal.close();
 
@@ -127,6 +139,7 @@ public class CliCommands implements Callable<Integer> {
 
         CommandLine cmd = new CommandLine(this, factory);
         cmd.setErr(terminal.writer());
+        cmd.setCaseInsensitiveEnumValuesAllowed(true);
         PicocliCommands picocliCommands = new PicocliCommands(cmd);
 
         // initialize picocli integration with jline
@@ -138,7 +151,7 @@ public class CliCommands implements Callable<Integer> {
         // create line reader
         in = LineReaderBuilder.builder()
                 .terminal(terminal)
-                .completer(systemRegistry.completer())
+                .completer(new AggregateCompleter(systemRegistry.completer(), new TrackCompleter()))
                 .parser(parser)
                 .variable(LineReader.LIST_MAX, 50)   // max tab completion candidates
                 .build();
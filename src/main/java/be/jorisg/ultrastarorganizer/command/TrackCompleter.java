@@ -0,0 +1,113 @@
+package be.jorisg.ultrastarorganizer.command;
+
+import be.jorisg.ultrastarorganizer.UltrastarOrganizer;
+import be.jorisg.ultrastarorganizer.domain.Library;
+import be.jorisg.ultrastarorganizer.domain.TrackDirectory;
+import be.jorisg.ultrastarorganizer.domain.TrackInfo;
+import be.jorisg.ultrastarorganizer.search.PrefixTrie;
+import org.jline.reader.Candidate;
+import org.jline.reader.Completer;
+import org.jline.reader.LineReader;
+import org.jline.reader.ParsedLine;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Completes artists, titles and track names for the query of the search command. The trie is updated
+ * with the track directories that changed since the previous completion, directories are matched by path
+ * so a library that is loaded again only updates the directories whose tracks have other values.
+ */
+public class TrackCompleter implements Completer {
+
+    private static final int LIMIT = 50;
+
+    private final PrefixTrie trie = new PrefixTrie();
+
+    // the values added to the trie per directory, exactly these are removed again
+    private final Map<File, Indexed> indexed = new HashMap<>();
+    private List<TrackDirectory> snapshot = List.of();
+
+    @Override
+    public void complete(LineReader reader, ParsedLine line, List<Candidate> candidates) {
+        List<String> words = line.words();
+        int index = line.wordIndex();
+        if (index < 2 || !words.get(0).equals("search")) {
+            return;
+        }
+
+        String previous = words.get(index - 1);
+        if (!previous.equals("-q") && !previous.equals("--query")) {
+            return;
+        }
+
+        // don't load the library while typing
+        Library library = UltrastarOrganizer.loadedLibrary();
+        if (library == null) {
+            return;
+        }
+
+        update(library.trackDirectories());
+
+        String prefix = line.word().substring(0, line.wordCursor());
+        for (String value : trie.complete(prefix, LIMIT)) {
+            candidates.add(new Candidate(value, value, null, null, null, null, true));
+        }
+    }
+
+    private void update(List<TrackDirectory> trackDirectories) {
+        // the library replaces its list on every change
+        if (trackDirectories == snapshot) {
+            return;
+        }
+        snapshot = trackDirectories;
+
+        Set<File> current = new HashSet<>();
+        trackDirectories.forEach(td -> current.add(td.directory()));
+
+        Iterator<Map.Entry<File, Indexed>> it = indexed.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<File, Indexed> e = it.next();
+            if (!current.contains(e.getKey())) {
+                e.getValue().values().forEach(trie::remove);
+                it.remove();
+            }
+        }
+
+        for (TrackDirectory td : trackDirectories) {
+            Indexed previous = indexed.get(td.directory());
+            if (previous != null && previous.trackDirectory() == td) {
+                continue;
+            }
+
+            List<String> values = new ArrayList<>();
+            td.tracks().forEach(ti -> values.addAll(values(ti)));
+            if (previous != null) {
+                if (previous.values().equals(values)) {
+                    indexed.put(td.directory(), new Indexed(td, previous.values()));
+                    continue;
+                }
+                previous.values().forEach(trie::remove);
+            }
+
+            values.forEach(trie::add);
+            indexed.put(td.directory(), new Indexed(td, values));
+        }
+    }
+
+    private List<String> values(TrackInfo ti) {
+        List<String> values = new ArrayList<>(3);
+        if (ti.artist() != null) {
+            values.add(ti.artist());
+        }
+        if (ti.title() != null) {
+            values.add(ti.title());
+        }
+        values.add(ti.safeName());
+        return values;
+    }
+
+    private record Indexed(TrackDirectory trackDirectory, List<String> values) {
+    }
+
+}
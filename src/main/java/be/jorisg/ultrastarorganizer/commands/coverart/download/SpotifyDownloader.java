@@ -3,6 +3,7 @@ package be.jorisg.ultrastarorganizer.commands.coverart.download;
 import be.jorisg.ultrastarorganizer.UltrastarOrganizer;
 import be.jorisg.ultrastarorganizer.domain.TrackDirectory;
 import be.jorisg.ultrastarorganizer.domain.TrackInfo;
+import be.jorisg.ultrastarorganizer.utils.ImageHeader;
 import com.neovisionaries.i18n.CountryCode;
 import org.apache.hc.core5.http.ParseException;
 import picocli.CommandLine;
@@ -45,9 +46,10 @@ public class SpotifyDownloader {
 
         if (main.coverImageFile() != null) {
             // if a file exists, check if it is valid.
-            BufferedImage img = ImageIO.read(main.coverImageFile());
-            if (img != null) {
-                return; // cover can be loaded
+            try {
+                ImageHeader.read(main.coverImageFile());
+                return; // cover is a valid image
+            } catch (IOException ignored) {
             }
         }
 
@@ -3,12 +3,10 @@ package be.jorisg.ultrastarorganizer.commands.diff;
 import be.jorisg.ultrastarorganizer.UltrastarOrganizer;
 import be.jorisg.ultrastarorganizer.domain.Library;
 import be.jorisg.ultrastarorganizer.domain.TrackInfo;
-import be.jorisg.ultrastarorganizer.utils.Utils;
-import org.apache.commons.text.similarity.LevenshteinDistance;
+import be.jorisg.ultrastarorganizer.utils.DirectoryCopier;
 import picocli.CommandLine;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.*;
 
 @CommandLine.Command(name = "diff",
@@ -21,6 +19,13 @@ public class DiffCommand implements Runnable {
     @CommandLine.Option(names = {"-c", "--copy-to"}, description = "Copy the shown files to the given directory.")
     private File copyTo;
 
+    @CommandLine.Option(names = {"--link-mode"}, description = "How files are copied: ${COMPLETION-CANDIDATES}. "
+            + "Links only work on the same filesystem, other files are copied.")
+    private DirectoryCopier.LinkMode linkMode = DirectoryCopier.LinkMode.COPY;
+
+    @CommandLine.Option(names = {"-j", "--jobs"}, description = "The amount of directories that are copied at the same time.")
+    private int jobs = UltrastarOrganizer.threads;
+
     @CommandLine.Option(names = {"-d", "--show-duplicates"}, description = "Show all tracks that are both in the current library and the given library.")
     private boolean showDuplicates = false;
 
@@ -38,25 +43,36 @@ public class DiffCommand implements Runnable {
         }
         UltrastarOrganizer.refresh();
 
-        Library lib = new Library(target);
+        Library lib = new Library(target, UltrastarOrganizer.threads);
         isSimilar(lib.tracks());
     }
 
-    private boolean isSimilar(String s, String t) {
-        return LevenshteinDistance.getDefaultInstance().apply(s.toLowerCase(), t.toLowerCase()) < 2;
-    }
-
-    private void isSimilar(Collection<TrackInfo> other) {
+    private void isSimilar(List<TrackInfo> other) {
         List<TrackInfo> thiz = UltrastarOrganizer.library().tracks();
 
-        List<TrackInfo> unique = new ArrayList<>(thiz); // only in current library
-        unique.removeIf(ti -> other.stream().anyMatch(t -> isSimilar(t.name(), ti.name())));
+        // tracks are similar when their names differ at most one edit, ignoring case
+        NameMatcher matcher = new NameMatcher(other.stream().map(ti -> ti.name().toLowerCase()).toList());
+        boolean[] matched = new boolean[other.size()];
+
+        List<TrackInfo> unique = new ArrayList<>(); // only in current library
+        List<TrackInfo> duplicate = new ArrayList<>(); // in both
+        for (TrackInfo ti : thiz) {
+            List<Integer> matches = matcher.matches(ti.name().toLowerCase());
+            if (matches.isEmpty()) {
+                unique.add(ti);
+                continue;
+            }
+            duplicate.add(ti);
+            matches.forEach(i -> matched[i] = true);
+        }
 
-        List<TrackInfo> missing = new ArrayList<>(other); // not in current library
-        missing.removeIf(ti -> thiz.stream().anyMatch(t -> isSimilar(t.name(), ti.name())));
+        List<TrackInfo> missing = new ArrayList<>(); // not in current library
+        for (int i = 0; i < other.size(); i++) {
+            if (!matched[i]) {
+                missing.add(other.get(i));
+            }
+        }
 
-        List<TrackInfo> duplicate = new ArrayList<>(thiz); // in both
-        duplicate.removeIf(ti -> other.stream().noneMatch(t -> isSimilar(t.name(), ti.name())));
         Set<File> copied = new HashSet<>();
 
         // unique
@@ -100,17 +116,14 @@ public class DiffCommand implements Runnable {
     }
 
     private void copyTo(List<TrackInfo> tracks, Set<File> copied) {
-        tracks.stream()
+        List<File> directories = tracks.stream()
                 .map(TrackInfo::parentDirectory)
                 .distinct()
-                .filter(td -> !copied.contains(td))
-                .forEach(td -> {
-                    copied.add(td);
-                    try {
-                        Utils.copyFolder(td.toPath(), copyTo.toPath().resolve(td.getName()));
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+                .filter(copied::add)
+                .toList();
+
+        DirectoryCopier copier = new DirectoryCopier(jobs, linkMode);
+        copier.copy(directories, copyTo, dir -> {}).forEach((dir, error) -> UltrastarOrganizer.out.println(
+                CommandLine.Help.Ansi.AUTO.string("@|red ERROR: Failed to copy " + dir.getName() + ": " + error + "|@")));
     }
 }
@@ -0,0 +1,83 @@
+package be.jorisg.ultrastarorganizer.commands.diff;
+
+import be.jorisg.ultrastarorganizer.search.EditDistance;
+
+import java.util.*;
+
+/**
+ * Finds the names in a list that differ at most one edit from a given name. Candidates come from an exact
+ * lookup and from trigram postings, only names of similar length are compared with the edit distance.
+ * One edit changes at most 3 trigrams of a name, so a name within one edit shares at least one of any 4
+ * distinct trigrams. Only the 4 rarest trigrams of the given name are looked up, very short names are
+ * compared with all names of a similar length instead.
+ */
+class NameMatcher {
+
+    private static final int MAX_DISTANCE = 1;
+    private static final int LOOKUPS = 3 * MAX_DISTANCE + 1;
+
+    private final List<String> names;
+    private final Map<String, List<Integer>> exact = new HashMap<>();
+    private final Map<String, List<Integer>> trigrams = new HashMap<>();
+    private final Map<Integer, List<Integer>> lengths = new HashMap<>();
+
+    NameMatcher(List<String> names) {
+        this.names = names;
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            exact.computeIfAbsent(name, k -> new ArrayList<>()).add(i);
+            lengths.computeIfAbsent(name.length(), k -> new ArrayList<>()).add(i);
+            for (String trigram : trigrams(name)) {
+                trigrams.computeIfAbsent(trigram, k -> new ArrayList<>()).add(i);
+            }
+        }
+    }
+
+    /**
+     * Indexes of all names that are at most one edit away from the given name.
+     */
+    List<Integer> matches(String name) {
+        List<Integer> result = new ArrayList<>(exact.getOrDefault(name, List.of()));
+
+        List<String> grams = new ArrayList<>(trigrams(name));
+        grams.sort(Comparator.comparingInt(g -> trigrams.getOrDefault(g, List.of()).size()));
+
+        List<List<Integer>> postings = new ArrayList<>();
+        if (grams.size() < LOOKUPS) {
+            for (int length = name.length() - MAX_DISTANCE; length <= name.length() + MAX_DISTANCE; length++) {
+                postings.add(lengths.getOrDefault(length, List.of()));
+            }
+        } else {
+            for (String gram : grams.subList(0, LOOKUPS)) {
+                postings.add(trigrams.getOrDefault(gram, List.of()));
+            }
+        }
+
+        Set<Integer> candidates = new HashSet<>();
+        for (List<Integer> list : postings) {
+            for (int i : list) {
+                String other = names.get(i);
+                if (Math.abs(other.length() - name.length()) <= MAX_DISTANCE && !other.equals(name)) {
+                    candidates.add(i);
+                }
+            }
+        }
+
+        for (int i : candidates) {
+            if (EditDistance.levenshtein(name, names.get(i), MAX_DISTANCE) <= MAX_DISTANCE) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> trigrams(String name) {
+        String padded = "\0\0" + name + "\0\0";
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+}
@@ -4,17 +4,22 @@ import be.jorisg.ultrastarorganizer.UltrastarOrganizer;
 import be.jorisg.ultrastarorganizer.domain.Library;
 import be.jorisg.ultrastarorganizer.domain.NoteLyric;
 import be.jorisg.ultrastarorganizer.domain.NoteLyricCollection;
+import be.jorisg.ultrastarorganizer.domain.TrackDirectory;
 import be.jorisg.ultrastarorganizer.domain.TrackInfo;
+import be.jorisg.ultrastarorganizer.utils.ImageHeader;
 import be.jorisg.ultrastarorganizer.utils.Utils;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import picocli.CommandLine;
 
-import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -23,12 +28,20 @@ import java.util.function.Supplier;
         description = "Check your library for problems and try to fix them.")
 public class DoctorCommand implements Runnable {
 
+    // ffmpeg uses multiple threads itself
+    private static final int FFMPEG_JOBS = 2;
+
     @CommandLine.Option(names = {"--dry-run"}, description = "Print problems but don't fix them.")
     private boolean dryRun = false;
 
     @CommandLine.Option(names = {"--ignore", "-i"}, description = "Don't fix or print problems for: cover, background, audio, video, lyrics.")
     private String[] ignore = new String[0];
 
+    @CommandLine.Option(names = {"-j", "--jobs"}, description = "The amount of tracks that are checked at the same time.")
+    private int jobs = UltrastarOrganizer.threads;
+
+    private ExecutorService ffmpeg;
+
     @Override
     public void run() {
         Library library = UltrastarOrganizer.refresh();
@@ -36,12 +49,40 @@ public class DoctorCommand implements Runnable {
         int tracks = 0;
         int issues = 0;
 
-        for (TrackInfo ti : library.tracks()) {
-            int i = process(ti);
-            if (i > 0) {
-                tracks++;
-                issues += i;
+        // tracks of the same directory are checked by the same worker as they can share files
+        try (ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, jobs));
+             ExecutorService ffmpeg = Executors.newFixedThreadPool(FFMPEG_JOBS)) {
+            this.ffmpeg = ffmpeg;
+
+            List<Future<List<Report>>> futures = new ArrayList<>();
+            for (TrackDirectory td : library.trackDirectories()) {
+                futures.add(workers.submit(() -> td.tracks().stream().map(this::process).toList()));
+            }
+
+            // print the reports in library order as soon as they are available
+            for (Future<List<Report>> future : futures) {
+                List<Report> reports;
+                try {
+                    reports = future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace(UltrastarOrganizer.out);
+                    continue;
+                }
+
+                for (Report report : reports) {
+                    if (report.issues().isEmpty()) {
+                        continue;
+                    }
+                    report.print();
+                    tracks++;
+                    issues += report.issues().size();
+                }
             }
+        } finally {
+            this.ffmpeg = null;
         }
 
         // remove empty directories or directories with corrupt tracks
@@ -86,7 +127,7 @@ public class DoctorCommand implements Runnable {
                 String.format("@|cyan Your library is %.2f GB in size.|@", size / 1024.d / 1024.d / 1024.d)));
     }
 
-    private int process(TrackInfo ti) {
+    private Report process(TrackInfo ti) {
         List<String> issues = new ArrayList<>();
 
         audio(ti, issues);
@@ -95,20 +136,23 @@ public class DoctorCommand implements Runnable {
         background(ti, issues);
         lyrics(ti, issues);
 
-        if (issues.isEmpty()) {
-            return 0;
+        if (!issues.isEmpty()) {
+            ti.save();
         }
 
-        UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(
-                String.format("@|red Issues for |@ @|magenta %s|@@|red :|@", ti.name())));
-        for (String msg : issues) {
-            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(
-                    String.format("@|yellow - %s|@", msg)));
-        }
+        return new Report(ti, issues);
+    }
 
-        ti.save();
+    private record Report(TrackInfo ti, List<String> issues) {
 
-        return issues.size();
+        void print() {
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(
+                    String.format("@|red Issues for |@ @|magenta %s|@@|red :|@", ti.name())));
+            for (String msg : issues) {
+                UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(
+                        String.format("@|yellow - %s|@", msg)));
+            }
+        }
     }
 
     private void audio(@NotNull TrackInfo ti, @NotNull List<String> issues) {
@@ -134,8 +178,14 @@ public class DoctorCommand implements Runnable {
         issues.removeLast();
         File dest = new File(ti.parentDirectory(), ti.safeName() + ".mp3");
         try {
-            Utils.extractAudioFromVideo(ti.videoFile(), dest);
+            File video = ti.videoFile();
+            ffmpeg.submit(() -> {
+                Utils.extractAudioFromVideo(video, dest);
+                return null;
+            }).get();
             issues.add("Audio file is missing -> FIXED");
+        } catch (ExecutionException e) {
+            issues.add("Audio file is missing -> FAILED: " + e.getCause().getMessage());
         } catch (Exception e) {
             issues.add("Audio file is missing -> FAILED: " + e.getMessage());
         }
@@ -171,7 +221,7 @@ public class DoctorCommand implements Runnable {
                         Utils.IMAGE_EXT
                 ).orElse(null),
                 ti::setCoverImageFileName,
-                f -> ImageIO.read(ti.coverImageFile()),
+                ImageHeader::read,
                 "Cover image",
                 issues);
     }
@@ -189,7 +239,7 @@ public class DoctorCommand implements Runnable {
                         Utils.IMAGE_EXT
                 ).orElse(null),
                 ti::setBackgroundImageFileName,
-                f -> ImageIO.read(ti.backgroundImageFile()),
+                ImageHeader::read,
                 "Background image",
                 issues);
         issues.remove("Background image is missing.");
@@ -3,15 +3,14 @@ package be.jorisg.ultrastarorganizer.commands.merge;
 import be.jorisg.ultrastarorganizer.UltrastarOrganizer;
 import be.jorisg.ultrastarorganizer.domain.Library;
 import be.jorisg.ultrastarorganizer.domain.TrackInfo;
-import org.apache.commons.io.FileUtils;
+import be.jorisg.ultrastarorganizer.utils.DirectoryCopier;
 import picocli.CommandLine;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @CommandLine.Command(name = "merge",
         description = "Add unique songs from another library to the current library.")
@@ -20,6 +19,13 @@ public class MergeCommand implements Runnable {
     @CommandLine.Parameters(index = "0", description = "The library to compare with.")
     private File target;
 
+    @CommandLine.Option(names = {"-j", "--jobs"}, description = "The amount of directories that are copied at the same time.")
+    private int jobs = UltrastarOrganizer.threads;
+
+    @CommandLine.Option(names = {"--link-mode"}, description = "How files are copied: ${COMPLETION-CANDIDATES}. "
+            + "Links only work on the same filesystem, other files are copied.")
+    private DirectoryCopier.LinkMode linkMode = DirectoryCopier.LinkMode.COPY;
+
     @Override
     public void run() {
         if (!target.exists()) {
@@ -32,29 +38,28 @@ public class MergeCommand implements Runnable {
         }
         UltrastarOrganizer.refresh();
 
-        List<TrackInfo> thiz = UltrastarOrganizer.library().tracks()
+        Set<String> thiz = UltrastarOrganizer.library().tracks()
                 .stream()
+                .map(TrackInfo::safeName)
+                .collect(Collectors.toSet());
+
+        Library lib = new Library(target, UltrastarOrganizer.threads);
+        List<TrackInfo> missing = lib.tracks().stream()
+                .filter(ti -> !thiz.contains(ti.safeName())) // not in current library
                 .toList();
 
-        Library lib = new Library(target);
-        List<TrackInfo> missing = new ArrayList<>(lib.tracks());
-        missing.removeIf(ti -> thiz.stream().anyMatch(t -> t.safeName().equals(ti.safeName()))); // not in current library
-
-        Set<File> copied = new HashSet<>();
-        for ( TrackInfo ti : missing ) {
-            File dir = ti.parentDirectory();
-            if ( copied.contains(dir) ) {
-                continue;
-            }
-            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|yellow Copying " + dir.getName() + " |@"));
-            try {
-                FileUtils.copyDirectory(dir, new File(UltrastarOrganizer.library().directory(), dir.getName()), true);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            copied.add(dir);
-        }
+        List<File> directories = missing.stream().map(TrackInfo::parentDirectory).distinct().toList();
+
+        DirectoryCopier copier = new DirectoryCopier(jobs, linkMode);
+        Map<File, String> failures = copier.copy(directories, UltrastarOrganizer.library().directory(), dir ->
+                UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|yellow Copying " + dir.getName() + " |@")));
+
+        failures.forEach((dir, error) -> UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(
+                "@|red ERROR: Failed to copy " + dir.getName() + ": " + error + "|@")));
 
-        UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|yellow Copied a total of " + missing.size() + " songs. |@"));
+        long copied = missing.stream().filter(ti -> !failures.containsKey(ti.parentDirectory())).count();
+        UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(String.format(
+                "@|yellow Copied a total of %d songs (%d files linked, %.1f MB copied at %.1f MB/s). |@",
+                copied, copier.linked(), copier.bytes() / 1_000_000d, copier.megabytesPerSecond())));
     }
 }
@@ -1,22 +1,37 @@
 package be.jorisg.ultrastarorganizer.commands.search;
 
 import be.jorisg.ultrastarorganizer.UltrastarOrganizer;
+import be.jorisg.ultrastarorganizer.domain.LibraryFacets;
 import be.jorisg.ultrastarorganizer.domain.TrackInfo;
+import be.jorisg.ultrastarorganizer.search.LyricIndex;
 import be.jorisg.ultrastarorganizer.search.SearchEngine;
+import be.jorisg.ultrastarorganizer.utils.ImageHeader;
 import picocli.CommandLine;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.util.*;
 
 @CommandLine.Command(name = "search",
         description = "Search tracks by query and/or flags")
 public class SearchCommand implements Runnable {
 
-    @CommandLine.Option(names = {"-q", "--query"}, description = "Show tracks that match the given query.")
+    private static final String INDEX_FILE_NAME = ".ultrastarorganizer.search";
+
+    // kept between invocations so only changed tracks are indexed again, options are track identifiers so
+    // the indexes stay valid when the library is loaded again
+    private static final LyricIndex<String> lyricIndex = new LyricIndex<>();
+    private static SearchEngine<String> engine;
+    private static File engineDirectory;
+    private static final Set<String> engineOptions = new HashSet<>();
+
+    @CommandLine.Option(names = {"-q", "--query"}, description = "Show tracks that match the given query, "
+            + "e.g. 'queen artist:queen year:1975..1985 duet:false -has:video bpm>300'.")
     private String query;
 
+    @CommandLine.Option(names = {"-l", "--lyrics"}, description = "Show tracks with lyrics that contain the given phrase.")
+    private String lyrics;
+
     @CommandLine.Option(names = {"--has-background"}, description = "Only show tracks with a background image")
     private boolean hasBackground;
 
@@ -41,73 +56,203 @@ public class SearchCommand implements Runnable {
     @CommandLine.Option(names = {"--duet"}, description = "Only show tracks that are duets.")
     private boolean duet;
 
+    @CommandLine.Option(names = {"--year"}, description = "Only show tracks of one of the given years, separated by a comma.")
+    private String year;
+
+    @CommandLine.Option(names = {"--genre"}, description = "Only show tracks of one of the given genres, separated by a comma.")
+    private String genre;
+
+    @CommandLine.Option(names = {"--language"}, description = "Only show tracks in one of the given languages, separated by a comma.")
+    private String language;
+
     @Override
     public void run() {
         UltrastarOrganizer.refresh();
 
-        List<TrackInfo> result;
-
-        if (query != null) {
-            SearchEngine<TrackInfo> engine = new SearchEngine<>();
-            UltrastarOrganizer.library().tracks().forEach(ti -> engine.index(ti, ti.safeName()));
-            result = engine.search(query).stream().map(SearchEngine.SearchResult::option).toList();
-        } else {
-            result = UltrastarOrganizer.library().tracks();
-        }
+        // cheap filters first, only the remaining tracks are scored
+        LibraryFacets facets = UltrastarOrganizer.library().facets();
+        BitSet filter = facets.all();
 
         if (hasBackground) {
-            result = result.stream().filter(trackInfo -> trackInfo.backgroundImageFile() != null).toList();
+            filter.and(facets.with(LibraryFacets.Flag.BACKGROUND));
         } else if ( hasNoBackground ) {
-            result = result.stream().filter(trackInfo -> trackInfo.backgroundImageFile() == null).toList();
+            filter.andNot(facets.with(LibraryFacets.Flag.BACKGROUND));
         }
 
         if (hasVideo) {
-            result = result.stream().filter(trackInfo -> trackInfo.videoFile() != null).toList();
+            filter.and(facets.with(LibraryFacets.Flag.VIDEO));
         } else if ( hasNoVideo ) {
-            result = result.stream().filter(trackInfo -> trackInfo.videoFile() == null).toList();
+            filter.andNot(facets.with(LibraryFacets.Flag.VIDEO));
         }
 
         if (hasCover) {
-            result = result.stream().filter(trackInfo -> trackInfo.coverImageFile() != null).toList();
+            filter.and(facets.with(LibraryFacets.Flag.COVER));
         } else if ( hasNoCover ) {
-            result = result.stream().filter(trackInfo -> trackInfo.coverImageFile() == null).toList();
+            filter.andNot(facets.with(LibraryFacets.Flag.COVER));
         }
 
         if ( multipleVersions ) {
-            result = result.stream().filter(ti -> UltrastarOrganizer.library().directoryOf(ti).tracks().size() > 1).toList();
+            filter.and(facets.with(LibraryFacets.Flag.MULTI_VERSION));
         }
 
         if ( duet ) {
-            result = result.stream().filter(TrackInfo::isDuet).toList();
+            filter.and(facets.with(LibraryFacets.Flag.DUET));
+        }
+
+        if (year != null) {
+            filter.and(facets.with("YEAR", year));
+        }
+
+        if (genre != null) {
+            filter.and(facets.with("GENRE", genre));
+        }
+
+        if (language != null) {
+            filter.and(facets.with("LANGUAGE", language));
+        }
+
+        String text = "";
+        if (query != null) {
+            try {
+                SearchQuery sq = SearchQuery.parse(query);
+                filter.and(sq.filter(facets));
+                text = sq.text();
+            } catch (IllegalArgumentException e) {
+                UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: " + e.getMessage() + "|@"));
+                return;
+            }
+        }
+
+        // the indexes are keyed by track identifier, only needed when one of them is used
+        Map<String, TrackInfo> tracks = new HashMap<>();
+        if (!text.isBlank() || lyrics != null) {
+            UltrastarOrganizer.library().tracks().forEach(ti -> tracks.put(identifier(ti), ti));
+        }
+
+        List<TrackInfo> result;
+        if (text.isBlank()) {
+            result = facets.tracks(filter);
+        } else {
+            // bits refer to the tracks in library order, which only changes when tracks are indexed or removed
+            result = engine(tracks).search(text, Integer.MAX_VALUE, id -> facets.contains(filter, tracks.get(id)), filter)
+                    .stream().map(r -> tracks.get(r.option())).toList();
+        }
+
+        Map<TrackInfo, LyricIndex.Match<String>> matches = new HashMap<>();
+        if (lyrics != null) {
+            Set<TrackInfo> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+            candidates.addAll(result);
+            for (LyricIndex.Match<String> match : lyrics(tracks).search(lyrics)) {
+                TrackInfo ti = tracks.get(match.option());
+                if (candidates.contains(ti)) {
+                    matches.putIfAbsent(ti, match);
+                }
+            }
+            result = result.stream().filter(matches::containsKey).toList();
         }
 
         UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|cyan Found " + result.size() + " results: |@"));
         for (TrackInfo ti : result) {
-            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|green " + ti.safeName() + "|@"));
+            LyricIndex.Match<String> match = matches.get(ti);
+            String suffix = match == null ? "" : " (" + time(ti, match.beat()) + ")";
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|green " + ti.safeName() + suffix + "|@"));
+        }
+    }
+
+    /**
+     * Update the lyric index with the given tracks, tracks that changed or no longer exist are removed.
+     */
+    private LyricIndex<String> lyrics(Map<String, TrackInfo> tracks) {
+        new ArrayList<>(lyricIndex.options()).stream()
+                .filter(id -> !tracks.containsKey(id))
+                .forEach(lyricIndex::remove);
+
+        // parsed without caching, so the note lyrics of the whole library are not kept in memory
+        List<String> missing = tracks.keySet().stream().filter(id -> !lyricIndex.contains(id)).toList();
+        Map<String, String> failures = lyricIndex.indexAll(missing, id -> tracks.get(id).parseNoteLyrics(),
+                UltrastarOrganizer.threads);
+        failures.forEach((id, error) -> UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(
+                "@|red ERROR: Failed to index lyrics of " + tracks.get(id).safeName() + ": " + error + "|@")));
+        return lyricIndex;
+    }
+
+    private String time(TrackInfo ti, int beat) {
+        try {
+            double bpm = Double.parseDouble(ti.header("BPM").orElseThrow().replace(",", ".").trim());
+            double gap = ti.header("GAP").map(s -> Double.parseDouble(s.replace(",", ".").trim())).orElse(0d);
+            long seconds = (long) ((gap + beat * 60000 / (bpm * 4)) / 1000);
+            return String.format("%d:%02d", seconds / 60, seconds % 60);
+        } catch (RuntimeException e) {
+            return "beat " + beat;
         }
     }
 
+    /**
+     * Search engine for all tracks in the library by identifier. The engine is kept between invocations and
+     * restored from the index file in the library directory when the session starts, only tracks whose file
+     * changed since then are indexed again.
+     */
+    private SearchEngine<String> engine(Map<String, TrackInfo> tracks) {
+        File directory = UltrastarOrganizer.library().directory();
+        File file = new File(directory, INDEX_FILE_NAME);
+
+        if (engine == null || !directory.equals(engineDirectory)) {
+            engine = new SearchEngine<>(true);
+            engineDirectory = directory;
+            engineOptions.clear();
+            if (file.exists()) {
+                try {
+                    engineOptions.addAll(engine.read(file, id -> tracks.containsKey(id) ? id : null));
+                } catch (IOException e) {
+                    engine = new SearchEngine<>(true);
+                    engineOptions.clear();
+                }
+            }
+        }
+
+        List<String> removed = engineOptions.stream().filter(id -> !tracks.containsKey(id)).toList();
+        List<String> missing = tracks.keySet().stream().filter(id -> !engineOptions.contains(id)).toList();
+        if (removed.isEmpty() && missing.isEmpty()) {
+            return engine;
+        }
+
+        engine.removeAll(new HashSet<>(removed));
+        removed.forEach(engineOptions::remove);
+        for (String id : missing) {
+            engine.index(id, tracks.get(id).safeName());
+            engineOptions.add(id);
+        }
+
+        try {
+            engine.write(file, id -> id);
+        } catch (IOException e) {
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red Error while writing search index: " + e.getMessage() + "|@"));
+        }
+        return engine;
+    }
+
+    /**
+     * The path of the track with the size and modification time that were recorded when it was loaded,
+     * so the file system is not touched.
+     */
+    private String identifier(TrackInfo ti) {
+        String path = UltrastarOrganizer.library().directory().toPath().relativize(ti.file().toPath()).toString();
+        return path + ":" + ti.fileSize() + ":" + ti.fileModified();
+    }
+
     private boolean suspiciousImageRatio(TrackInfo ti) {
         if ( ti.backgroundImageFile() == null || ti.coverImageFile() == null ) {
             return false;
         }
 
         try {
-            BufferedImage cover = ImageIO.read(ti.coverImageFile());
-            if (cover == null) {
-                return false;
-            }
-
-            if ( Math.abs(cover.getWidth() - cover.getHeight()) < 10 ) {
+            ImageHeader cover = ImageHeader.read(ti.coverImageFile());
+            if ( Math.abs(cover.width() - cover.height()) < 10 ) {
                 return true;
             }
 
-            BufferedImage back = ImageIO.read(ti.backgroundImageFile());
-            if (back == null) {
-                return false;
-            }
-
-            if (back.getWidth() < cover.getWidth() || back.getHeight() < cover.getHeight()) {
+            ImageHeader back = ImageHeader.read(ti.backgroundImageFile());
+            if (back.width() < cover.width() || back.height() < cover.height()) {
                 return true;
             }
         } catch (IOException ignored) {}
@@ -0,0 +1,216 @@
+package be.jorisg.ultrastarorganizer.commands.search;
+
+import be.jorisg.ultrastarorganizer.domain.LibraryFacets;
+import be.jorisg.ultrastarorganizer.domain.TrackInfo;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Query of the search command, e.g. {@code artist:queen year:1975..1985 duet:false -has:video bpm>300}.
+ * Words without a known field are matched against the track names. Facet headers are applied first
+ * (only their distinct values are tested), then the other headers of the remaining tracks and then the
+ * flags, which were checked while loading the library, so the file system is never touched. The text
+ * score is computed last.
+ */
+class SearchQuery {
+
+    private static final Pattern TERM = Pattern.compile("(-?)([a-zA-Z]+)(:|>=|<=|>|<)(.+)");
+
+    private static final Set<String> HEADER_FIELDS = Set.of("ARTIST", "TITLE", "ALBUM", "CREATOR", "BPM", "GAP");
+
+    private final List<String> words = new ArrayList<>();
+    private final List<FlagTerm> flagTerms = new ArrayList<>();
+    private final List<HeaderTerm> facetTerms = new ArrayList<>();
+    private final List<HeaderTerm> headerTerms = new ArrayList<>();
+
+    private SearchQuery() {
+    }
+
+    static SearchQuery parse(String input) {
+        SearchQuery query = new SearchQuery();
+        for (String token : tokenize(input)) {
+            Matcher m = TERM.matcher(token);
+            if (!m.matches() || !query.add(m.group(1).equals("-"), m.group(2).toUpperCase(Locale.ROOT),
+                    m.group(3), m.group(4))) {
+                query.words.add(token);
+            }
+        }
+        return query;
+    }
+
+    private boolean add(boolean negated, String field, String op, String value) {
+        if (field.equals("HAS") && op.equals(":")) {
+            LibraryFacets.Flag flag = switch (value.toLowerCase(Locale.ROOT)) {
+                case "video" -> LibraryFacets.Flag.VIDEO;
+                case "cover" -> LibraryFacets.Flag.COVER;
+                case "background" -> LibraryFacets.Flag.BACKGROUND;
+                default -> throw new IllegalArgumentException("Unknown value for has: '" + value + "'.");
+            };
+            flagTerms.add(new FlagTerm(flag, negated));
+            return true;
+        }
+
+        if ((field.equals("DUET") || field.equals("MULTI")) && op.equals(":")) {
+            LibraryFacets.Flag flag = field.equals("DUET") ? LibraryFacets.Flag.DUET : LibraryFacets.Flag.MULTI_VERSION;
+            flagTerms.add(new FlagTerm(flag, negated == parseBoolean(field, value)));
+            return true;
+        }
+
+        if (LibraryFacets.HEADERS.contains(field)) {
+            facetTerms.add(new HeaderTerm(field, test(op, value, false), negated));
+            return true;
+        }
+
+        if (HEADER_FIELDS.contains(field)) {
+            headerTerms.add(new HeaderTerm(field, test(op, value, true), negated));
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * The words that are not part of a term, these are scored by the search engine.
+     */
+    String text() {
+        return String.join(" ", words);
+    }
+
+    /**
+     * The tracks that match all terms of this query.
+     */
+    BitSet filter(LibraryFacets facets) {
+        BitSet bits = facets.all();
+
+        for (HeaderTerm term : facetTerms) {
+            BitSet matching = facets.matching(term.header(), term.test());
+            if (term.negated()) {
+                bits.andNot(matching);
+            } else {
+                bits.and(matching);
+            }
+        }
+
+        if (!headerTerms.isEmpty()) {
+            List<TrackInfo> tracks = facets.tracks();
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                TrackInfo ti = tracks.get(i);
+                for (HeaderTerm term : headerTerms) {
+                    boolean match = ti.header(term.header()).map(term.test()::test).orElse(false);
+                    if (match == term.negated()) {
+                        bits.clear(i);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // only the bits that are still set are affected
+        for (FlagTerm term : flagTerms) {
+            if (bits.isEmpty()) {
+                break;
+            }
+            if (term.negated()) {
+                bits.andNot(facets.with(term.flag()));
+            } else {
+                bits.and(facets.with(term.flag()));
+            }
+        }
+        return bits;
+    }
+
+    //
+
+    private record FlagTerm(LibraryFacets.Flag flag, boolean negated) {
+    }
+
+    private record HeaderTerm(String header, Predicate<String> test, boolean negated) {
+    }
+
+    private static Predicate<String> test(String op, String value, boolean contains) {
+        switch (op) {
+            case ">":
+                double gt = parseNumber(value);
+                return s -> number(s) > gt;
+            case ">=":
+                double ge = parseNumber(value);
+                return s -> number(s) >= ge;
+            case "<":
+                double lt = parseNumber(value);
+                return s -> number(s) < lt;
+            case "<=":
+                double le = parseNumber(value);
+                return s -> number(s) <= le;
+        }
+
+        int range = value.indexOf("..");
+        if (range >= 0) {
+            double min = range == 0 ? Double.NEGATIVE_INFINITY : parseNumber(value.substring(0, range));
+            double max = range + 2 == value.length() ? Double.POSITIVE_INFINITY : parseNumber(value.substring(range + 2));
+            return s -> {
+                double n = number(s);
+                return n >= min && n <= max;
+            };
+        }
+
+        String v = value.toLowerCase(Locale.ROOT);
+        if (contains) {
+            return s -> s.toLowerCase(Locale.ROOT).contains(v);
+        }
+        return s -> s.trim().toLowerCase(Locale.ROOT).equals(v);
+    }
+
+    private static double parseNumber(String value) {
+        double n = number(value);
+        if (Double.isNaN(n)) {
+            throw new IllegalArgumentException("Invalid number in query: '" + value + "'.");
+        }
+        return n;
+    }
+
+    private static double number(String value) {
+        try {
+            return Double.parseDouble(value.replace(",", ".").trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean parseBoolean(String field, String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "true", "yes" -> true;
+            case "false", "no" -> false;
+            default -> throw new IllegalArgumentException("Unknown value for " + field.toLowerCase(Locale.ROOT) + ": '" + value + "'.");
+        };
+    }
+
+    /**
+     * Split on whitespace, except between double quotes. The quotes are removed.
+     */
+    private static List<String> tokenize(String input) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (!sb.isEmpty()) {
+                    tokens.add(sb.toString());
+                    sb.setLength(0);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        if (!sb.isEmpty()) {
+            tokens.add(sb.toString());
+        }
+        return tokens;
+    }
+
+}
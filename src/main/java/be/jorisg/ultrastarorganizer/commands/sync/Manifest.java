@@ -0,0 +1,203 @@
+package be.jorisg.ultrastarorganizer.commands.sync;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32C;
+
+/**
+ * The size, modification time and checksum of all files in a library, by path relative to the library
+ * directory. The manifest is cached in the library directory, the checksum of a file is only calculated
+ * again when its size or modification time changed. Hidden files and directories are skipped, files that
+ * could not be read are listed separately.
+ */
+class Manifest {
+
+    static final String FILE_NAME = ".ultrastarorganizer.manifest";
+
+    private final static int MAGIC = 0x55534F4D;
+    private final static int VERSION = 1;
+
+    record Entry(long size, long modified, long checksum) {
+
+        /**
+         * Both files have the same content, the modification time is ignored.
+         */
+        boolean sameContent(Entry other) {
+            return size == other.size && checksum == other.checksum;
+        }
+    }
+
+    private final File directory;
+    private final Map<String, Entry> entries;
+    private final Map<String, String> unreadable;
+
+    private Manifest(File directory, Map<String, Entry> entries, Map<String, String> unreadable) {
+        this.directory = directory;
+        this.entries = entries;
+        this.unreadable = unreadable;
+    }
+
+    /**
+     * Scan the given directory, reusing the checksums of the cached manifest for unchanged files.
+     */
+    static Manifest load(File directory, int parallelism) throws IOException {
+        Map<String, Entry> cached = read(new File(directory, FILE_NAME));
+
+        Map<String, Entry> entries = new TreeMap<>();
+        Map<String, BasicFileAttributes> changed = new LinkedHashMap<>();
+        Path root = directory.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root) && dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || file.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                String path = relativePath(root, file);
+                Entry entry = cached.get(path);
+                if (entry != null && entry.size == attrs.size() && entry.modified == attrs.lastModifiedTime().toMillis()) {
+                    entries.put(path, entry);
+                } else {
+                    changed.put(path, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // calculate the checksums of new and changed files
+        Map<String, String> unreadable = new TreeMap<>();
+        Map<String, ForkJoinTask<Entry>> tasks = new LinkedHashMap<>();
+        try (ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism))) {
+            changed.forEach((path, attrs) -> tasks.put(path, pool.submit(() -> new Entry(attrs.size(),
+                    attrs.lastModifiedTime().toMillis(), checksum(root.resolve(path))))));
+
+            for (Map.Entry<String, ForkJoinTask<Entry>> task : tasks.entrySet()) {
+                try {
+                    entries.put(task.getKey(), task.getValue().get());
+                } catch (ExecutionException e) {
+                    // only files that were removed while scanning are left out entirely
+                    if (!(e.getCause() instanceof NoSuchFileException)) {
+                        unreadable.put(task.getKey(), String.valueOf(e.getCause().getMessage()));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while calculating checksums.");
+                }
+            }
+        }
+
+        return new Manifest(directory, entries, unreadable);
+    }
+
+    Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * The files that exist but could not be read, by path with the error. They are not in {@link #entries()}.
+     */
+    Map<String, String> unreadable() {
+        return Collections.unmodifiableMap(unreadable);
+    }
+
+    void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    void remove(String path) {
+        entries.remove(path);
+    }
+
+    /**
+     * Store this manifest in the library directory for the next scan.
+     */
+    void save() throws IOException {
+        File file = new File(directory, FILE_NAME);
+        File tmp = new File(directory, FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                byte[] path = e.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().modified);
+                out.writeLong(e.getValue().checksum);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //
+
+    /**
+     * Paths are always separated with a slash so manifests can be compared between platforms.
+     */
+    static String relativePath(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static Map<String, Entry> read(File file) {
+        Map<String, Entry> result = new HashMap<>();
+        if (!file.exists()) {
+            return result;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return result;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] path = new byte[in.readInt()];
+                in.readFully(path);
+                result.put(new String(path, StandardCharsets.UTF_8), new Entry(in.readLong(), in.readLong(), in.readLong()));
+            }
+        } catch (IOException e) {
+            // a broken cache only means that all checksums are calculated again
+            result.clear();
+        }
+        return result;
+    }
+
+    private static long checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+}
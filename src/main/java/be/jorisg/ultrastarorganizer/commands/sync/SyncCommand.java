@@ -0,0 +1,167 @@
+package be.jorisg.ultrastarorganizer.commands.sync;
+
+import be.jorisg.ultrastarorganizer.UltrastarOrganizer;
+import be.jorisg.ultrastarorganizer.utils.DirectoryCopier;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@CommandLine.Command(name = "sync",
+        description = "Copy new and changed files of the current library to another library.")
+public class SyncCommand implements Runnable {
+
+    @CommandLine.Parameters(index = "0", description = "The library directory to update.")
+    private File target;
+
+    @CommandLine.Option(names = {"-j", "--jobs"}, description = "The amount of files that are copied at the same time.")
+    private int jobs = UltrastarOrganizer.threads;
+
+    @CommandLine.Option(names = {"--link-mode"}, description = "How files are copied: ${COMPLETION-CANDIDATES}. "
+            + "Links only work on the same filesystem, other files are copied.")
+    private DirectoryCopier.LinkMode linkMode = DirectoryCopier.LinkMode.COPY;
+
+    @CommandLine.Option(names = {"-d", "--delete"}, description = "Delete files in the given library that are not in the current library.")
+    private boolean delete = false;
+
+    @CommandLine.Option(names = {"-n", "--dry-run"}, description = "Only show the changes, don't copy or delete anything.")
+    private boolean dryRun = false;
+
+    @Override
+    public void run() {
+        if (!target.exists()) {
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: The given path '" + target.toPath() + "' does not exist. |@"));
+            return;
+        }
+        if (!target.isDirectory()) {
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: The given path '" + target.toPath() + "' is not a directory. |@"));
+            return;
+        }
+
+        File source = UltrastarOrganizer.workDir;
+        try {
+            if (Files.isSameFile(source.toPath(), target.toPath())) {
+                UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: The given path is the current library. |@"));
+                return;
+            }
+        } catch (IOException e) {
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: " + e.getMessage() + "|@"));
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        Manifest from;
+        Manifest to;
+        try {
+            from = Manifest.load(source, UltrastarOrganizer.threads);
+            to = Manifest.load(target, UltrastarOrganizer.threads);
+        } catch (IOException e) {
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: Failed to scan library: " + e.getMessage() + "|@"));
+            return;
+        }
+
+        // files that could not be read are neither copied nor deleted
+        from.unreadable().forEach((path, error) -> UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(
+                "@|red ERROR: Failed to read " + path + ", it is skipped: " + error + "|@")));
+
+        // compare
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Manifest.Entry> e : from.entries().entrySet()) {
+            Manifest.Entry other = to.entries().get(e.getKey());
+            if (other == null) {
+                added.add(e.getKey());
+            } else if (!e.getValue().sameContent(other)) {
+                changed.add(e.getKey());
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        if (delete) {
+            to.entries().keySet().stream()
+                    .filter(path -> !from.entries().containsKey(path) && !from.unreadable().containsKey(path))
+                    .forEach(removed::add);
+        }
+
+        if (dryRun) {
+            added.forEach(path -> UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|green + " + path + "|@")));
+            changed.forEach(path -> UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|yellow * " + path + "|@")));
+            removed.forEach(path -> UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red - " + path + "|@")));
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(String.format(
+                    "@|cyan Found %d new, %d changed and %d deleted files. |@", added.size(), changed.size(), removed.size())));
+            return;
+        }
+
+        // copy
+        List<String> copy = new ArrayList<>(added);
+        copy.addAll(changed);
+
+        DirectoryCopier copier = new DirectoryCopier(jobs, linkMode);
+        Map<String, String> failures = copier.copyFiles(source, target, copy, path ->
+                UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|yellow Copying " + path + " |@")));
+        failures.forEach((path, error) -> UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(
+                "@|red ERROR: Failed to copy " + path + ": " + error + "|@")));
+
+        // the copies keep the modification time, so the checksum of the source is still valid
+        for (String path : copy) {
+            Manifest.Entry entry = from.entries().get(path);
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(target.toPath().resolve(path), BasicFileAttributes.class);
+                if (attrs.size() == entry.size() && attrs.lastModifiedTime().toMillis() == entry.modified()) {
+                    to.put(path, entry);
+                    continue;
+                }
+            } catch (IOException ignored) {
+            }
+            to.remove(path);
+        }
+
+        // delete
+        int deleted = 0;
+        for (String path : removed) {
+            Path file = target.toPath().resolve(path);
+            try {
+                Files.deleteIfExists(file);
+                to.remove(path);
+                deleted++;
+                UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red Deleted " + path + "|@"));
+                deleteEmptyParents(file.getParent());
+            } catch (IOException e) {
+                UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: Failed to delete " + path + ": " + e.getMessage() + "|@"));
+            }
+        }
+
+        try {
+            from.save();
+            to.save();
+        } catch (IOException e) {
+            UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string("@|red ERROR: Failed to save manifest: " + e.getMessage() + "|@"));
+        }
+
+        UltrastarOrganizer.out.println(CommandLine.Help.Ansi.AUTO.string(String.format(
+                "@|yellow Synced %d new, %d changed and %d deleted files in %.1fs (%d files linked, %.1f MB copied at %.1f MB/s). |@",
+                added.stream().filter(path -> !failures.containsKey(path)).count(),
+                changed.stream().filter(path -> !failures.containsKey(path)).count(), deleted, (System.currentTimeMillis() - start) / 1000d,
+                copier.linked(), copier.bytes() / 1_000_000d, copier.megabytesPerSecond())));
+    }
+
+    private void deleteEmptyParents(Path dir) throws IOException {
+        Path root = target.toPath();
+        while (dir != null && !dir.equals(root) && dir.startsWith(root)) {
+            String[] files = dir.toFile().list();
+            if (files == null || files.length > 0) {
+                return;
+            }
+            Files.delete(dir);
+            dir = dir.getParent();
+        }
+    }
+
+}
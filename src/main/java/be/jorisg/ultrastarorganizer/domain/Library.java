@@ -6,16 +6,42 @@ import me.tongfei.progressbar.ProgressBarStyle;
 import org.apache.commons.io.FilenameUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 public class Library {
 
     private final File directory;
-    private final List<TrackDirectory> trackDirectories = new ArrayList<>();
+    private final int parallelism;
+
+    // only the library that is being organized writes its index, other libraries are only read
+    private final boolean writeIndex;
+    private volatile List<TrackDirectory> trackDirectories = List.of();
+    private LibraryIndex index;
+
+    // media flags per track, computed while loading because they require file system checks
+    private final Map<TrackInfo, Integer> mediaFlags = new IdentityHashMap<>();
+    private volatile LibraryFacets facets;
 
     public Library(File directory) {
+        this(directory, Runtime.getRuntime().availableProcessors());
+    }
+
+    public Library(File directory, int parallelism) {
+        this(directory, parallelism, false);
+    }
+
+    /**
+     * @param writeIndex store the parsed track files in the library directory so the next load is faster
+     */
+    public Library(File directory, int parallelism, boolean writeIndex) {
         this.directory = directory;
+        this.parallelism = Math.max(1, parallelism);
+        this.writeIndex = writeIndex;
+        this.index = new LibraryIndex(directory);
         refresh();
     }
 
@@ -23,50 +49,160 @@ public class Library {
         return directory;
     }
 
-    public void refresh() {
+    public synchronized void refresh() {
+        load(true).forEach(System.out::println);
+    }
+
+    /**
+     * Reload all track directories without showing progress.
+     *
+     * @return the issues found while loading
+     */
+    synchronized List<String> reload() {
+        return load(false);
+    }
+
+    private List<String> load(boolean progress) {
         File[] files = directory.listFiles();
         if (files == null) {
-            System.out.println("Error while loading library files.");
-            return;
+            return List.of("Error while loading library files.");
         }
+
+        // listFiles() order depends on the filesystem, sort to keep the library order stable
+        Arrays.sort(files);
+
         ProgressBarBuilder pbb = new ProgressBarBuilder()
                 .setTaskName("Loading Library")
                 .setInitialMax(files.length)
                 .setMaxRenderedLength(100)
+                .setUnit(" files", 1)
+                .showSpeed()
                 .setStyle(ProgressBarStyle.ASCII);
 
+        index = new LibraryIndex(directory);
+        index.read();
+
+        List<TrackDirectory> result = new ArrayList<>();
         List<String> issues = new ArrayList<>();
+        mediaFlags.clear();
 
-        try (ProgressBar pb = pbb.build()) {
+        try (
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                ProgressBar pb = progress ? pbb.build() : null
+        ) {
+            List<ForkJoinTask<DirectoryResult>> tasks = new ArrayList<>();
             for (File file : files) {
-                if (!file.isDirectory()) {
+                tasks.add(pool.submit(() -> {
+                    try {
+                        return file.isDirectory() ? processTracks(file, index) : null;
+                    } finally {
+                        if (pb != null) {
+                            pb.step();
+                        }
+                    }
+                }));
+            }
+
+            // join in submission order so the result does not depend on scheduling
+            for (ForkJoinTask<DirectoryResult> task : tasks) {
+                DirectoryResult dr = task.join();
+                if (dr == null) {
                     continue;
                 }
 
-                processTracks(file, issues);
-                pb.step();
+                issues.addAll(dr.issues());
+                if (dr.trackDirectory() != null) {
+                    result.add(dr.trackDirectory());
+                    mediaFlags.putAll(dr.mediaFlags());
+                }
             }
         }
 
-        issues.forEach(System.out::println);
+        writeIndex(issues);
+
+        trackDirectories = List.copyOf(result);
+        facets = null;
+        return issues;
     }
 
-    private void processTracks(File directory, List<String> issues) {
+    /**
+     * Reload a single track directory. The directory is added, replaced or removed depending on
+     * whether it still exists and contains valid tracks.
+     *
+     * @return the issues found while loading
+     */
+    synchronized List<String> refresh(File directory) {
+        List<TrackDirectory> result = new ArrayList<>(trackDirectories);
+        boolean removed = result.removeIf(td -> {
+            if (!td.directory().equals(directory)) {
+                return false;
+            }
+            td.tracks().forEach(mediaFlags::remove);
+            return true;
+        });
+
+        index.remove(directory);
+
+        if (!directory.isDirectory()) {
+            List<String> issues = new ArrayList<>();
+            if (removed) {
+                trackDirectories = List.copyOf(result);
+                facets = null;
+                writeIndex(issues);
+            }
+            return issues;
+        }
+
+        DirectoryResult dr = processTracks(directory, index);
+        if (dr.trackDirectory() != null) {
+            result.add(dr.trackDirectory());
+            result.sort(Comparator.comparing(TrackDirectory::directory));
+            mediaFlags.putAll(dr.mediaFlags());
+        }
+
+        trackDirectories = List.copyOf(result);
+        facets = null;
+
+        List<String> issues = new ArrayList<>(dr.issues());
+        writeIndex(issues);
+        return issues;
+    }
+
+    private void writeIndex(List<String> issues) {
+        if (!writeIndex) {
+            return;
+        }
+        try {
+            index.write();
+        } catch (IOException e) {
+            issues.add("Error while writing library index: " + e.getMessage());
+        }
+    }
+
+    private DirectoryResult processTracks(File directory, LibraryIndex index) {
         List<File> txtFiles = filesByExtensions(directory, "txt");
+        long directoryModified = directory.lastModified();
         List<TrackInfo> tracks = new ArrayList<>();
+        Map<TrackInfo, Integer> flags = new IdentityHashMap<>();
+        List<String> issues = new ArrayList<>();
         for (File file : txtFiles) {
             try {
-                tracks.add(TrackInfo.load(file));
+                TrackInfo ti = index.load(file);
+                tracks.add(ti);
+                flags.put(ti, index.mediaFlags(file, ti, directoryModified));
             } catch (Exception ex) {
                 issues.add("An error occured for file '" + directory.getParentFile().toPath().relativize(file.toPath()) + "': " + ex.getMessage());
             }
         }
 
         if (tracks.isEmpty()) {
-            return;
+            return new DirectoryResult(null, issues, Map.of());
         }
 
-        this.trackDirectories.add(new TrackDirectory(directory, tracks));
+        return new DirectoryResult(new TrackDirectory(directory, tracks), issues, flags);
+    }
+
+    private record DirectoryResult(TrackDirectory trackDirectory, List<String> issues, Map<TrackInfo, Integer> mediaFlags) {
     }
 
     public static List<File> filesByExtensions(File directory, String... extensions) {
@@ -81,8 +217,15 @@ public class Library {
         return trackDirectories.stream().flatMap(td -> td.tracks().stream()).collect(Collectors.toList());
     }
 
+    public synchronized LibraryFacets facets() {
+        if (facets == null) {
+            facets = new LibraryFacets(trackDirectories, mediaFlags);
+        }
+        return facets;
+    }
+
     public List<TrackDirectory> trackDirectories() {
-        return Collections.unmodifiableList(trackDirectories);
+        return trackDirectories;
     }
 
     public TrackDirectory directoryOf(TrackInfo ti) {
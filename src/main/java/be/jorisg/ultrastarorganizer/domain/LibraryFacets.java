@@ -0,0 +1,170 @@
+package be.jorisg.ultrastarorganizer.domain;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Bitsets of the tracks in a library per facet, bit i refers to the i-th track of {@link #tracks()}.
+ * Facets are computed when they are created without touching the file system: the media flags are
+ * checked while the library is loaded and cached in its index, the other flags only depend on the
+ * headers and the layout of the library.
+ */
+public class LibraryFacets {
+
+    public enum Flag {
+        VIDEO, COVER, BACKGROUND, DUET, MULTI_VERSION
+    }
+
+    public static final List<String> HEADERS = List.of("YEAR", "GENRE", "LANGUAGE", "EDITION");
+
+    private static final Flag[] FLAGS = Flag.values();
+
+    private final List<TrackInfo> tracks;
+    private final Map<TrackInfo, Integer> indexes = new IdentityHashMap<>();
+    private final BitSet[] flags = new BitSet[FLAGS.length];
+
+    // header -> lowercase value -> tracks
+    private final Map<String, Map<String, BitSet>> headers = new HashMap<>();
+
+    /**
+     * @param mediaFlags the {@link #mediaFlags(TrackInfo)} of each track
+     */
+    LibraryFacets(List<TrackDirectory> trackDirectories, Map<TrackInfo, Integer> mediaFlags) {
+        this.tracks = trackDirectories.stream().flatMap(td -> td.tracks().stream()).toList();
+
+        for (int f = 0; f < flags.length; f++) {
+            flags[f] = new BitSet(tracks.size());
+        }
+        for (String header : HEADERS) {
+            headers.put(header, new HashMap<>());
+        }
+
+        int i = 0;
+        for (TrackDirectory td : trackDirectories) {
+            for (TrackInfo ti : td.tracks()) {
+                indexes.put(ti, i);
+
+                int mask = mediaFlags.getOrDefault(ti, 0);
+                if (ti.isDuet()) {
+                    mask |= 1 << Flag.DUET.ordinal();
+                }
+                if (td.tracks().size() > 1) {
+                    mask |= 1 << Flag.MULTI_VERSION.ordinal();
+                }
+                for (int f = 0; f < flags.length; f++) {
+                    if ((mask & (1 << f)) != 0) {
+                        flags[f].set(i);
+                    }
+                }
+
+                for (String header : HEADERS) {
+                    Optional<String> value = ti.header(header);
+                    if (value.isEmpty()) {
+                        continue;
+                    }
+                    for (String part : value.get().split(",")) {
+                        String key = normalize(part);
+                        if (!key.isEmpty()) {
+                            headers.get(header).computeIfAbsent(key, k -> new BitSet(tracks.size())).set(i);
+                        }
+                    }
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * The media flags of a track as a bitmask of {@link Flag} ordinals. This checks whether the media files
+     * exist, so it is computed while loading and cached in the library index.
+     */
+    static int mediaFlags(TrackInfo ti) {
+        int mask = 0;
+        if (ti.videoFile() != null) {
+            mask |= 1 << Flag.VIDEO.ordinal();
+        }
+        if (ti.coverImageFile() != null) {
+            mask |= 1 << Flag.COVER.ordinal();
+        }
+        if (ti.backgroundImageFile() != null) {
+            mask |= 1 << Flag.BACKGROUND.ordinal();
+        }
+        return mask;
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    //
+
+    public List<TrackInfo> tracks() {
+        return tracks;
+    }
+
+    /**
+     * A new bitset with all tracks set.
+     */
+    public BitSet all() {
+        BitSet bits = new BitSet(tracks.size());
+        bits.set(0, tracks.size());
+        return bits;
+    }
+
+    /**
+     * A new bitset with the tracks that have the given flag.
+     */
+    public BitSet with(Flag flag) {
+        return (BitSet) flags[flag.ordinal()].clone();
+    }
+
+    /**
+     * A new bitset with the tracks that have one of the given values for one of the {@link #HEADERS},
+     * ignoring case. Values are separated by a comma, as they are in the headers of a track.
+     */
+    public BitSet with(String header, String values) {
+        BitSet result = new BitSet(tracks.size());
+        for (String value : values.split(",")) {
+            BitSet bits = headers.getOrDefault(header, Map.of()).get(normalize(value));
+            if (bits != null) {
+                result.or(bits);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A new bitset with the tracks that have a value for one of the {@link #HEADERS} that matches the given
+     * predicate. The predicate is only tested once for each distinct lowercase value.
+     */
+    public BitSet matching(String header, Predicate<String> value) {
+        BitSet bits = new BitSet(tracks.size());
+        headers.getOrDefault(header, Map.of()).forEach((v, b) -> {
+            if (value.test(v)) {
+                bits.or(b);
+            }
+        });
+        return bits;
+    }
+
+    /**
+     * All lowercase values of one of the {@link #HEADERS}.
+     */
+    public Set<String> values(String header) {
+        return Collections.unmodifiableSet(headers.getOrDefault(header, Map.of()).keySet());
+    }
+
+    public boolean contains(BitSet bits, TrackInfo ti) {
+        Integer index = indexes.get(ti);
+        return index != null && bits.get(index);
+    }
+
+    public List<TrackInfo> tracks(BitSet bits) {
+        List<TrackInfo> result = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0 && i < tracks.size(); i = bits.nextSetBit(i + 1)) {
+            result.add(tracks.get(i));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,250 @@
+package be.jorisg.ultrastarorganizer.domain;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of parsed track files stored in the root of a library. Entries are keyed by their path relative
+ * to the library and are only reused when the size and modification time of the file did not change.
+ * Only the headers and the location of the note lyrics are stored, unless the note lyrics could not be
+ * located without decoding the entire file. The media flags of a track are stored with the modification
+ * time of its directory, files can not be added, removed or renamed without changing it.
+ */
+class LibraryIndex {
+
+    static final String FILE_NAME = ".ultrastarorganizer.index";
+
+    private static final int MAGIC = 0x55534F49;
+    private static final int VERSION = 3;
+
+    private final File root;
+    private final File file;
+
+    private final Map<String, Entry> previous = new HashMap<>();
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+
+    LibraryIndex(File root) {
+        this.root = root;
+        this.file = new File(root, FILE_NAME);
+    }
+
+    void read() {
+        previous.clear();
+        if (!file.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Entry entry = readEntry(in);
+                previous.put(entry.path(), entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            // corrupt or incompatible index, everything will be parsed again
+            previous.clear();
+        }
+    }
+
+    /**
+     * Load the given track file from the index if it is unchanged, otherwise parse it from disk.
+     * This method is safe to call from multiple threads.
+     */
+    TrackInfo load(File trackFile) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(trackFile.toPath(), BasicFileAttributes.class);
+        String path = root.toPath().relativize(trackFile.toPath()).toString();
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+
+        Entry entry = previous.get(path);
+        if (entry != null && entry.size() == size && entry.modified() == modified) {
+            current.put(path, entry);
+            if (entry.noteLyricsOffset() >= 0) {
+                return new TrackInfo(trackFile, new HashMap<>(entry.headers()), entry.charset(), entry.noteLyricsOffset(),
+                        size, modified);
+            }
+            return new TrackInfo(trackFile, new HashMap<>(entry.headers()), entry.noteLyricLines(), size, modified);
+        }
+
+        // the entry keeps a copy of the headers, edits of the track are only stored once it is saved
+        TrackInfo ti = TrackInfo.loadHeaders(trackFile);
+        if (ti.noteLyricsOffset() >= 0) {
+            entry = new Entry(path, size, modified, new HashMap<>(ti.headers()), ti.charset(), ti.noteLyricsOffset(),
+                    List.of(), 0, -1);
+        } else {
+            entry = new Entry(path, size, modified, new HashMap<>(ti.headers()), null, -1, ti.noteLyricLines(), 0, -1);
+        }
+        current.put(path, entry);
+        dirty = true;
+        return ti;
+    }
+
+    /**
+     * The {@link LibraryFacets#mediaFlags(TrackInfo)} of a track that was loaded by {@link #load(File)}, only
+     * computed again when the track or its directory changed.
+     */
+    int mediaFlags(File trackFile, TrackInfo ti, long directoryModified) {
+        String path = root.toPath().relativize(trackFile.toPath()).toString();
+        Entry entry = current.get(path);
+        if (entry != null && entry.mediaFlags() >= 0 && entry.directoryModified() == directoryModified) {
+            return entry.mediaFlags();
+        }
+
+        int flags = LibraryFacets.mediaFlags(ti);
+        if (entry != null) {
+            current.put(path, new Entry(entry.path(), entry.size(), entry.modified(), entry.headers(), entry.charset(),
+                    entry.noteLyricsOffset(), entry.noteLyricLines(), directoryModified, flags));
+            dirty = true;
+        }
+        return flags;
+    }
+
+    /**
+     * Forget the entries of the track files in the given directory, they are added again when the
+     * directory is loaded.
+     */
+    void remove(File directory) {
+        Path relative = root.toPath().relativize(directory.toPath());
+        if (current.keySet().removeIf(path -> relative.equals(Path.of(path).getParent()))) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Write all entries that were loaded since the last read, dropping files that no longer exist.
+     */
+    void write() throws IOException {
+        if (!dirty && current.keySet().equals(previous.keySet())) {
+            return;
+        }
+
+        File tmp = new File(root, FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tmp), 1 << 16), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(current.size());
+            for (String path : current.keySet().stream().sorted().toList()) {
+                writeEntry(out, current.get(path));
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        try {
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        // the written entries are the cache for later loads of single directories
+        previous.clear();
+        previous.putAll(current);
+        dirty = false;
+    }
+
+    //
+
+    private record Entry(String path, long size, long modified, Map<String, String> headers,
+                         Charset charset, long noteLyricsOffset, List<String> noteLyricLines,
+                         long directoryModified, int mediaFlags) {
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        String path = readString(in);
+        long size = in.readLong();
+        long modified = in.readLong();
+
+        int headerCount = in.readInt();
+        Map<String, String> headers = new HashMap<>(headerCount * 2);
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(readString(in), readString(in));
+        }
+
+        long directoryModified = in.readLong();
+        int mediaFlags = in.readInt();
+
+        long noteLyricsOffset = in.readLong();
+        if (noteLyricsOffset >= 0) {
+            String name = readString(in);
+            Charset charset;
+            try {
+                charset = Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                // IllegalCharsetNameException or UnsupportedCharsetException
+                throw new IOException("Unknown charset in library index: " + name, e);
+            }
+            return new Entry(path, size, modified, headers, charset, noteLyricsOffset, List.of(), directoryModified,
+                    mediaFlags);
+        }
+
+        int lineCount = in.readInt();
+        String[] lines = new String[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            lines[i] = readString(in);
+        }
+
+        return new Entry(path, size, modified, headers, null, -1, Arrays.asList(lines), directoryModified, mediaFlags);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        writeString(out, entry.path());
+        out.writeLong(entry.size());
+        out.writeLong(entry.modified());
+
+        out.writeInt(entry.headers().size());
+        for (Map.Entry<String, String> header : entry.headers().entrySet()) {
+            writeString(out, header.getKey());
+            writeString(out, header.getValue());
+        }
+
+        out.writeLong(entry.directoryModified());
+        out.writeInt(entry.mediaFlags());
+
+        out.writeLong(entry.noteLyricsOffset());
+        if (entry.noteLyricsOffset() >= 0) {
+            writeString(out, entry.charset().name());
+            return;
+        }
+
+        out.writeInt(entry.noteLyricLines().size());
+        for (String line : entry.noteLyricLines()) {
+            writeString(out, line);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -0,0 +1,140 @@
+package be.jorisg.ultrastarorganizer.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps a library up to date by listening for file system changes in the library directory and
+ * its track directories. Changes are collected until the file system is quiet for a short while and
+ * then applied per track directory. Messages are passed to the given output as they happen on the
+ * watcher thread, while the user may be typing.
+ */
+public class LibraryWatcher implements AutoCloseable {
+
+    private static final long DEBOUNCE_MILLIS = 250;
+
+    private final Library library;
+    private final Consumer<String> output;
+    private final Path root;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Thread thread;
+
+    private boolean limitReached = false;
+
+    public LibraryWatcher(Library library, Consumer<String> output) throws IOException {
+        this.library = library;
+        this.output = output;
+        this.root = library.directory().toPath();
+        this.watchService = root.getFileSystem().newWatchService();
+
+        keys.put(root.register(watchService, ENTRY_CREATE, ENTRY_DELETE), root);
+
+        File[] files = library.directory().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    register(file.toPath());
+                }
+            }
+        }
+
+        thread = Thread.ofPlatform().daemon().name("library-watcher").unstarted(this::run);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    //
+
+    private void register(Path directory) {
+        try {
+            keys.put(directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+        } catch (IOException e) {
+            // most likely the inotify watch limit, changes in this directory will be missed
+            if (!limitReached) {
+                limitReached = true;
+                output.accept("Failed to watch '" + directory + "': " + e.getMessage());
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+
+                Set<File> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                while (key != null) {
+                    overflow |= process(key, changed);
+                    key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                try {
+                    if (overflow) {
+                        library.reload().forEach(output);
+                        continue;
+                    }
+
+                    for (File directory : changed) {
+                        library.refresh(directory).forEach(output);
+                    }
+                } catch (Exception e) {
+                    output.accept("Error while updating library: " + e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private boolean process(WatchKey key, Set<File> changed) {
+        Path directory = keys.get(key);
+        boolean overflow = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+
+            // track directory added or removed
+            if (directory.equals(root)) {
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                    register(path);
+                }
+                changed.add(path.toFile());
+                continue;
+            }
+
+            // media files are part of the facets, so any change reloads the track directory
+            if (!path.getFileName().toString().startsWith(".")) {
+                changed.add(directory.toFile());
+            }
+        }
+
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        return overflow;
+    }
+
+}
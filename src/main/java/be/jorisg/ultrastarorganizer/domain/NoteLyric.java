@@ -51,7 +51,125 @@ public record NoteLyric(NoteType type, int beat, int duration, int note, String
 
     //
 
-    public static NoteLyric fromString(String str) {
+    public static NoteLyric fromString(CharSequence line) {
+        int length = line.length();
+        int i = 0;
+        while (i < length && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+
+        // break with the beat attached to the type: "-10"
+        if (i + 1 < length && line.charAt(i) == '-' && !isSeparator(line.charAt(i + 1))) {
+            int end = tokenEnd(line, i + 1);
+            long beat = parseCanonicalInt(line, i + 1, end);
+            if (beat == INVALID) {
+                return parseIrregular(line.toString());
+            }
+            return new NoteLyric(NoteType.BREAK, (int) beat, 0, 0, "");
+        }
+
+        if (i >= length || (i + 1 < length && !isSeparator(line.charAt(i + 1)))) {
+            return parseIrregular(line.toString());
+        }
+
+        NoteType type = switch (line.charAt(i)) {
+            case ':' -> NoteType.NORMAL;
+            case '*' -> NoteType.GOLDEN;
+            case 'F' -> NoteType.FREESTYLE;
+            case '-' -> NoteType.BREAK;
+            case 'R' -> NoteType.RAP;
+            case 'G' -> NoteType.GOLDEN_RAP;
+            default -> null;
+        };
+        if (type == null) {
+            return parseIrregular(line.toString());
+        }
+
+        // beat
+        int start = i + 2;
+        int end = tokenEnd(line, start);
+        long beat = parseCanonicalInt(line, start, end);
+        if (beat == INVALID) {
+            return parseIrregular(line.toString());
+        }
+        if (type == NoteType.BREAK) {
+            return new NoteLyric(type, (int) beat, 0, 0, "");
+        }
+
+        // duration
+        start = end + 1;
+        end = tokenEnd(line, start);
+        long duration = parseCanonicalInt(line, start, end);
+        if (duration == INVALID) {
+            return parseIrregular(line.toString());
+        }
+
+        // note
+        start = end + 1;
+        end = tokenEnd(line, start);
+        long note = parseCanonicalInt(line, start, end);
+        if (note == INVALID) {
+            return parseIrregular(line.toString());
+        }
+
+        // the text is everything after the separator that follows the note
+        String text = "";
+        if (end + 1 < length) {
+            text = line.subSequence(end + 1, length).toString();
+            if (text.indexOf('\t') >= 0) {
+                text = text.replace('\t', ' ');
+            }
+        }
+
+        return new NoteLyric(type, (int) beat, (int) duration, (int) note, text);
+    }
+
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static int tokenEnd(CharSequence line, int start) {
+        int end = start;
+        while (end < line.length() && !isSeparator(line.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Parse an integer that is written exactly as {@link Integer#toString(int)} would write it,
+     * returns {@link #INVALID} for anything else.
+     */
+    private static long parseCanonicalInt(CharSequence line, int start, int end) {
+        boolean negative = start < end && line.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i >= end || end - i > 10 || (line.charAt(i) == '0' && (end - i > 1 || negative))) {
+            return INVALID;
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return INVALID;
+        }
+        return value;
+    }
+
+    /**
+     * Parser for lines that are not in the canonical format (repeated separators, padded numbers or
+     * invalid lines), this keeps the results and error messages identical for those lines.
+     */
+    private static NoteLyric parseIrregular(String str) {
         str = str.replaceAll(Pattern.quote("\t"), " ");
         str = str.stripLeading();
         String[] args = str.split(Pattern.quote(" "));
@@ -1,27 +1,78 @@
 package be.jorisg.ultrastarorganizer.domain;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
+/**
+ * A block of notes for a single singer. Notes are stored in parallel arrays, the texts of all notes share
+ * a single string. {@link #noteLyrics()} provides a read-only view of the notes as {@link NoteLyric} records.
+ */
 public class NoteLyricBlock {
 
-    private final List<NoteLyric> noteLyrics;
+    private static final NoteLyric.NoteType[] NOTE_TYPES = NoteLyric.NoteType.values();
+
+    private final byte[] types;
+    private final int[] beats;
+    private final int[] durations;
+    private final int[] notes;
+
+    // text of note i is texts[textOffsets[i], textOffsets[i + 1])
+    private final String texts;
+    private final int[] textOffsets;
+
     private final Singer singer;
     private final DuetFormat format;
 
-    NoteLyricBlock(List<NoteLyric> noteLyrics, Singer singer, DuetFormat format) {
-        this.noteLyrics = List.copyOf(noteLyrics);
+    private NoteLyricBlock(byte[] types, int[] beats, int[] durations, int[] notes, String texts, int[] textOffsets,
+                           Singer singer, DuetFormat format) {
+        this.types = types;
+        this.beats = beats;
+        this.durations = durations;
+        this.notes = notes;
+        this.texts = texts;
+        this.textOffsets = textOffsets;
         this.singer = singer;
         this.format = format;
     }
 
+    NoteLyricBlock(List<NoteLyric> noteLyrics, Singer singer, DuetFormat format) {
+        this(pack(noteLyrics), singer, format);
+    }
+
     NoteLyricBlock(List<NoteLyric> noteLyrics, Singer singer) {
         this(noteLyrics, singer, DuetFormat.NONE);
     }
 
+    private NoteLyricBlock(Builder builder, Singer singer, DuetFormat format) {
+        this(Arrays.copyOf(builder.types, builder.size),
+                Arrays.copyOf(builder.beats, builder.size),
+                Arrays.copyOf(builder.durations, builder.size),
+                Arrays.copyOf(builder.notes, builder.size),
+                builder.texts.toString(),
+                Arrays.copyOf(builder.textOffsets, builder.size + 1),
+                singer, format);
+    }
+
+    private static Builder pack(List<NoteLyric> noteLyrics) {
+        Builder builder = new Builder();
+        noteLyrics.forEach(builder::add);
+        return builder;
+    }
+
+    /**
+     * Copy of this block, the arrays are not shared so the copy can be modified independently.
+     */
+    public NoteLyricBlock copy() {
+        return new NoteLyricBlock(types.clone(), beats.clone(), durations.clone(), notes.clone(),
+                texts, textOffsets, singer, format);
+    }
+
     //
 
     public List<NoteLyric> noteLyrics() {
-        return noteLyrics;
+        return new NoteLyricView();
     }
 
     public Singer singer() {
@@ -32,17 +83,152 @@ public class NoteLyricBlock {
         return format;
     }
 
+    public int size() {
+        return beats.length;
+    }
+
+    public NoteLyric.NoteType type(int index) {
+        return NOTE_TYPES[types[index]];
+    }
+
+    public int beat(int index) {
+        return beats[index];
+    }
+
+    public int duration(int index) {
+        return durations[index];
+    }
+
+    public int note(int index) {
+        return notes[index];
+    }
+
+    public String text(int index) {
+        return texts.substring(textOffsets[index], textOffsets[index + 1]);
+    }
+
     public boolean isValid() {
         int last = 0;
-        for (NoteLyric nl : noteLyrics) {
-            if (nl.beat() < last) {
+        for (int beat : beats) {
+            if (beat < last) {
                 return true;
             }
-            last = nl.beat();
+            last = beat;
         }
         return true;
     }
 
+    /**
+     * Move all notes in this block by the given amount of beats. Only used on copies and new blocks,
+     * blocks that were handed out are never changed.
+     */
+    void shiftBeats(int amount) {
+        for (int i = 0; i < beats.length; i++) {
+            beats[i] += amount;
+        }
+    }
+
+    /**
+     * Some files use a duration of 0 to indicate that a note lasts until the next one, make those durations
+     * explicit. Notes followed by a break are left untouched. Only used on new blocks while parsing.
+     */
+    void fixZeroDurations() {
+        int breakType = NoteLyric.NoteType.BREAK.ordinal();
+        for (int i = 0; i < beats.length - 1; i++) {
+            if (durations[i] == 0 && types[i + 1] != breakType) {
+                durations[i] = beats[i + 1] - beats[i];
+            }
+        }
+    }
+
+    void appendTo(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < beats.length; i++) {
+            sb.setLength(0);
+            NoteLyric.NoteType type = NOTE_TYPES[types[i]];
+            sb.append(type.key).append(' ').append(beats[i]);
+            if (type == NoteLyric.NoteType.BREAK) {
+                if (durations[i] > 0) {
+                    sb.append(' ').append(durations[i]);
+                }
+            } else {
+                sb.append(' ').append(durations[i]).append(' ').append(notes[i]).append(' ')
+                        .append(texts, textOffsets[i], textOffsets[i + 1]);
+            }
+            lines.add(sb.toString());
+        }
+    }
+
+    private class NoteLyricView extends AbstractList<NoteLyric> implements RandomAccess {
+
+        @Override
+        public NoteLyric get(int index) {
+            return new NoteLyric(type(index), beats[index], durations[index], notes[index], text(index));
+        }
+
+        @Override
+        public int size() {
+            return beats.length;
+        }
+    }
+
+    //
+
+    /**
+     * Collects notes into growable arrays, used while parsing note lyrics.
+     */
+    static class Builder {
+
+        private byte[] types = new byte[64];
+        private int[] beats = new int[64];
+        private int[] durations = new int[64];
+        private int[] notes = new int[64];
+        private int[] textOffsets = new int[65];
+        private final StringBuilder texts = new StringBuilder();
+        private int size = 0;
+
+        void add(NoteLyric noteLyric) {
+            if (size == beats.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                beats = Arrays.copyOf(beats, capacity);
+                durations = Arrays.copyOf(durations, capacity);
+                notes = Arrays.copyOf(notes, capacity);
+                textOffsets = Arrays.copyOf(textOffsets, capacity + 1);
+            }
+
+            types[size] = (byte) noteLyric.type().ordinal();
+            beats[size] = noteLyric.beat();
+            durations[size] = noteLyric.duration();
+            notes[size] = noteLyric.note();
+            texts.append(noteLyric.text());
+            textOffsets[size + 1] = texts.length();
+            size++;
+        }
+
+        void removeLast() {
+            size--;
+            texts.setLength(textOffsets[size]);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        NoteLyric.NoteType lastType() {
+            return NOTE_TYPES[types[size - 1]];
+        }
+
+        void clear() {
+            size = 0;
+            texts.setLength(0);
+        }
+
+        NoteLyricBlock build(Singer singer, DuetFormat format) {
+            return new NoteLyricBlock(this, singer, format);
+        }
+    }
+
     //
 
     public enum Singer {
@@ -68,4 +254,4 @@ public class NoteLyricBlock {
         ALTERNATIVE;
     }
 
-}
\ No newline at end of file
+}
@@ -16,11 +16,9 @@ public record NoteLyricCollection(List<NoteLyricBlock> noteLyricBlocks) {
 
         List<NoteLyricBlock> blocks = new ArrayList<>();
         for ( NoteLyricBlock block : noteLyricBlocks ) {
-            List<NoteLyric> noteLyrics = new ArrayList<>();
-            for (NoteLyric note : block.noteLyrics()) {
-                noteLyrics.add(note.withBeat(note.beat() + amount));
-            }
-            blocks.add(new NoteLyricBlock(noteLyrics, block.singer()));
+            NoteLyricBlock copy = block.copy();
+            copy.shiftBeats(amount);
+            blocks.add(copy);
         }
 
         return new NoteLyricCollection(blocks);
@@ -32,9 +30,7 @@ public record NoteLyricCollection(List<NoteLyricBlock> noteLyricBlocks) {
             if ( block.singer() != null ) {
                 lines.add(block.singer().toString());
             }
-            for ( NoteLyric noteLyric : block.noteLyrics() ) {
-                lines.add(noteLyric.toString());
-            }
+            block.appendTo(lines);
         }
         lines.add("E");
         return lines;
@@ -42,7 +38,7 @@ public record NoteLyricCollection(List<NoteLyricBlock> noteLyricBlocks) {
 
     public static NoteLyricCollection fromStringList(List<String> noteLyrics, boolean relative) {
         List<NoteLyricBlock> blocks = new ArrayList<>();
-        List<NoteLyric> block = new ArrayList<>();
+        NoteLyricBlock.Builder block = new NoteLyricBlock.Builder();
 
         NoteLyricBlock.Singer singer = null;
         NoteLyricBlock.DuetFormat format = NoteLyricBlock.DuetFormat.NONE;
@@ -62,7 +58,7 @@ public record NoteLyricCollection(List<NoteLyricBlock> noteLyricBlocks) {
             if (trim.startsWith("P")) {
                 format = NoteLyricBlock.DuetFormat.ULTRASTAR;
                 if (!block.isEmpty()) {
-                    blocks.add(new NoteLyricBlock(block, singer, format));
+                    blocks.add(block.build(singer, format));
                     block.clear();
                 }
 
@@ -87,27 +83,17 @@ public record NoteLyricCollection(List<NoteLyricBlock> noteLyricBlocks) {
                     singer = NoteLyricBlock.Singer.SINGER1;
                 }
 
-                blocks.add(new NoteLyricBlock(block, singer, format));
+                blocks.add(block.build(singer, format));
                 block.clear();
 
                 // go to next singer
                 singer = NoteLyricBlock.Singer.values()[Math.min(singer.ordinal() + 1, NoteLyricBlock.Singer.values().length - 1)];
             }
 
-            if (!block.isEmpty()) {
-                NoteLyric last = block.getLast();
-
-                // Remove duplicate break blocks
-                if (noteLyric.type() == NoteLyric.NoteType.BREAK
-                        && last.type() == NoteLyric.NoteType.BREAK) {
-                    block.removeLast();
-                }
-
-                // Fix format where 0 duration means until next beat
-                if (noteLyric.type() != NoteLyric.NoteType.BREAK && last.duration() == 0) {
-                    block.removeLast();
-                    block.add(last.withDuration(noteLyric.beat() - last.beat()));
-                }
+            // Remove duplicate break blocks
+            if (!block.isEmpty() && noteLyric.type() == NoteLyric.NoteType.BREAK
+                    && block.lastType() == NoteLyric.NoteType.BREAK) {
+                block.removeLast();
             }
 
             if (relative && noteLyric.type() == NoteLyric.NoteType.BREAK && noteLyric.duration() == 0) {
@@ -118,7 +104,11 @@ public record NoteLyricCollection(List<NoteLyricBlock> noteLyricBlocks) {
             beat = noteLyric.beat();
         }
 
-        blocks.add(new NoteLyricBlock(block, singer, format));
+        blocks.add(block.build(singer, format));
+
+        // Fix format where 0 duration means until next beat
+        blocks.forEach(NoteLyricBlock::fixZeroDurations);
+
         return new NoteLyricCollection(blocks);
     }
 
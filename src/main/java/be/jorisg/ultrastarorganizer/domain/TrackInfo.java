@@ -4,28 +4,63 @@ import com.ibm.icu.text.CharsetDetector;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.text.Normalizer;
 import java.util.*;
 import java.util.regex.Pattern;
 
 public class TrackInfo {
 
+    // incremented when a command starts, tracks check whether their file changed at most once per command
+    private static volatile int command = 0;
+
     private File file;
 
     private final Map<String, String> headers;
     private List<String> noteLyricLines;
+    private NoteLyricCollection noteLyrics;
+
+    // location of the note lyrics in the file, -1 when the file does not match the note lyrics in memory
+    private Charset charset;
+    private long noteLyricsOffset;
+
+    // size and modification time of the file when the note lyrics were read or located,
+    // -1 when the note lyrics in memory were overwritten and not saved yet
+    private long fileSize;
+    private long fileModified;
+    private int checked = command;
 
-    private TrackInfo(File file, Map<String, String> headers, List<String> noteLyricLines) {
+    // modified: changed since the last save, saved: the file is known to match what save() would write
+    private boolean modified = false;
+    private boolean saved = false;
+
+    TrackInfo(File file, Map<String, String> headers, List<String> noteLyricLines, long fileSize, long fileModified) {
         this.file = file;
         this.headers = headers;
         this.noteLyricLines = noteLyricLines;
+        this.charset = null;
+        this.noteLyricsOffset = -1;
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
+    }
+
+    TrackInfo(File file, Map<String, String> headers, Charset charset, long noteLyricsOffset,
+              long fileSize, long fileModified) {
+        this.file = file;
+        this.headers = headers;
+        this.charset = charset;
+        this.noteLyricsOffset = noteLyricsOffset;
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
     }
 
     public File file() {
@@ -48,6 +83,110 @@ public class TrackInfo {
         return artist() + " - " + title();
     }
 
+    /**
+     * The size of the file when this track was loaded or last saved, -1 when it has unsaved note lyrics.
+     */
+    public synchronized long fileSize() {
+        return fileSize;
+    }
+
+    /**
+     * The modification time of the file when this track was loaded or last saved, -1 when it has unsaved
+     * note lyrics.
+     */
+    public synchronized long fileModified() {
+        return fileModified;
+    }
+
+    Map<String, String> headers() {
+        return headers;
+    }
+
+    synchronized List<String> noteLyricLines() {
+        reloadIfChanged();
+        if (noteLyricLines != null) {
+            return noteLyricLines;
+        }
+        if (noteLyricsOffset >= 0) {
+            noteLyricLines = readNoteLyricLines();
+            return noteLyricLines;
+        }
+        // overwritten and not saved yet
+        return noteLyrics.toStringList();
+    }
+
+    synchronized Charset charset() {
+        return charset;
+    }
+
+    synchronized long noteLyricsOffset() {
+        return noteLyricsOffset;
+    }
+
+    /**
+     * Tracks check again whether their file changed the next time their note lyrics are used.
+     */
+    public static void checkFilesAgain() {
+        command++;
+    }
+
+    /**
+     * The note lyrics in memory and their offset are only valid for the file as it was when they were read.
+     * When the file changed since, the headers and note lyrics are parsed again from the entire file. When
+     * the file no longer exists, the track in memory is kept as unsaved changes.
+     */
+    private void reloadIfChanged() {
+        if (fileSize < 0 || checked == command) {
+            return;
+        }
+        checked = command;
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            if (noteLyrics == null && noteLyricLines == null) {
+                throw new IllegalStateException("The file of track '" + name() + "' can not be read: " + e.getMessage());
+            }
+            charset = null;
+            noteLyricsOffset = -1;
+            fileSize = -1;
+            fileModified = -1;
+            modified = true;
+            saved = false;
+            return;
+        }
+        if (attrs.size() == fileSize && attrs.lastModifiedTime().toMillis() == fileModified) {
+            return;
+        }
+
+        TrackInfo current = load(file, false);
+        headers.clear();
+        headers.putAll(current.headers);
+        noteLyrics = null;
+        noteLyricLines = current.noteLyricLines;
+        charset = null;
+        noteLyricsOffset = -1;
+        fileSize = current.fileSize;
+        fileModified = current.fileModified;
+        modified = false;
+        saved = false;
+    }
+
+    private List<String> readNoteLyricLines() {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, channel.size() - noteLyricsOffset));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, noteLyricsOffset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return new String(buffer.array(), 0, buffer.position(), charset).lines().toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public Optional<String> header(String header) {
         String value = headers.get(header);
         if (value == null || value.trim().equals("")) {
@@ -100,7 +239,7 @@ public class TrackInfo {
     }
 
     public void setTitle(String title) {
-        headers.put("TITLE", title);
+        setHeader("TITLE", title);
     }
 
     public String artist() {
@@ -113,7 +252,14 @@ public class TrackInfo {
     }
 
     public void setArtist(String artist) {
-        headers.put("ARTIST", artist);
+        setHeader("ARTIST", artist);
+    }
+
+    private synchronized void setHeader(String key, String value) {
+        String previous = value == null ? headers.remove(key) : headers.put(key, value);
+        if (!Objects.equals(previous, value)) {
+            modified = true;
+        }
     }
 
     private File file(String key) {
@@ -138,11 +284,7 @@ public class TrackInfo {
     }
 
     public void setBackgroundImageFileName(String name) {
-        if (name == null) {
-            headers.remove("BACKGROUND");
-            return;
-        }
-        headers.put("BACKGROUND", name);
+        setHeader("BACKGROUND", name);
     }
 
     public File coverImageFile() {
@@ -150,11 +292,7 @@ public class TrackInfo {
     }
 
     public void setCoverImageFileName(String name) {
-        if (name == null) {
-            headers.remove("COVER");
-            return;
-        }
-        headers.put("COVER", name);
+        setHeader("COVER", name);
     }
 
     public File audioFile() {
@@ -162,11 +300,7 @@ public class TrackInfo {
     }
 
     public void setAudioFileName(String name) {
-        if (name == null) {
-            headers.remove("MP3");
-            return;
-        }
-        headers.put("MP3", name);
+        setHeader("MP3", name);
     }
 
     public File videoFile() {
@@ -174,11 +308,7 @@ public class TrackInfo {
     }
 
     public void setVideoFileName(String name) {
-        if (name == null) {
-            headers.remove("VIDEO");
-            return;
-        }
-        headers.put("VIDEO", name);
+        setHeader("VIDEO", name);
     }
 
     public void moveTo(File file) throws IOException {
@@ -186,12 +316,46 @@ public class TrackInfo {
         this.file = file;
     }
 
-    public NoteLyricCollection noteLyrics() {
-        return NoteLyricCollection.fromStringList(noteLyricLines, isNoteLyricsRelative());
+    /**
+     * The parsed note lyrics of this track. The result is cached until the note lyrics are overwritten or
+     * the file changes. The collection can't be changed, use {@link NoteLyricCollection#shift(int)} and
+     * {@link #overwriteNoteLyrics(NoteLyricCollection)} to make changes.
+     */
+    public synchronized NoteLyricCollection noteLyrics() {
+        reloadIfChanged();
+        if (noteLyrics != null) {
+            return noteLyrics;
+        }
+
+        noteLyrics = NoteLyricCollection.fromStringList(noteLyricLines(), isNoteLyricsRelative());
+
+        // the lines can be read from the file again when they are needed for saving
+        if (noteLyricsOffset >= 0) {
+            noteLyricLines = null;
+        }
+        return noteLyrics;
     }
 
-    public void overwriteNoteLyrics(NoteLyricCollection noteLyricCollection) {
-        this.noteLyricLines = noteLyricCollection.toStringList();
+    /**
+     * Parse the note lyrics of this track without caching them, for tracks whose note lyrics are only
+     * needed once. Note lyrics that are already in memory are returned as is.
+     */
+    public synchronized NoteLyricCollection parseNoteLyrics() {
+        reloadIfChanged();
+        if (noteLyrics != null) {
+            return noteLyrics;
+        }
+        List<String> lines = noteLyricLines == null ? readNoteLyricLines() : noteLyricLines;
+        return NoteLyricCollection.fromStringList(lines, isNoteLyricsRelative());
+    }
+
+    public synchronized void overwriteNoteLyrics(NoteLyricCollection noteLyricCollection) {
+        this.noteLyrics = noteLyricCollection;
+        this.noteLyricLines = null;
+        this.noteLyricsOffset = -1;
+        this.fileSize = -1;
+        this.fileModified = -1;
+        this.modified = true;
     }
 
     private boolean isNoteLyricsRelative() {
@@ -200,52 +364,164 @@ public class TrackInfo {
 
     //
 
-    public void save() {
-        try (FileWriter fw = new FileWriter(file, StandardCharsets.UTF_8)) {
-            // headers
-            for (String header : headers.keySet().stream().sorted().toList()) {
-                String line = "#" + header.toUpperCase() + ":" + headers.get(header.toUpperCase());
-                fw.write(line + "\n");
-            }
+    /**
+     * Write this track to its file. Nothing is written when the file already has the exact same contents.
+     */
+    public synchronized void save() {
+        if (saved && !modified) {
+            return;
+        }
+
+        List<String> lines = noteLyricLines();
+
+        // headers
+        StringBuilder sb = new StringBuilder();
+        for (String header : headers.keySet().stream().sorted().toList()) {
+            sb.append("#").append(header.toUpperCase()).append(":").append(headers.get(header.toUpperCase())).append("\n");
+        }
+        int headLength = sb.toString().getBytes(StandardCharsets.UTF_8).length;
+
+        // notes
+        for (String line : lines) {
+            sb.append(line).append("\n");
+        }
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
 
-            // notes
-            for (String line : noteLyricLines) {
-                fw.write(line + "\n");
+        try {
+            if (!contentEquals(content)) {
+                write(content);
             }
         } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
+
+        // the file matches the note lyrics in memory again, the lines can be read from it when needed
+        charset = StandardCharsets.UTF_8;
+        noteLyricsOffset = headLength;
+        noteLyricLines = null;
+        fileSize = file.length();
+        fileModified = file.lastModified();
+
+        modified = false;
+        saved = true;
     }
 
-    public static TrackInfo load(File file) {
-        CharsetDetector detector = new CharsetDetector();
+    private boolean contentEquals(byte[] content) throws IOException {
+        if (!file.exists() || file.length() != content.length) {
+            return false;
+        }
+        return Arrays.equals(Files.readAllBytes(file.toPath()), content);
+    }
 
-        Charset charset;
-        try (FileInputStream fis = new FileInputStream(file)) {
-            detector.setText(fis.readAllBytes());
-            charset = Charset.forName(detector.detect().getName());
+    private void write(byte[] content) throws IOException {
+        // write to a temporary file first so the track file is never left half written
+        Path tmp = new File(file.getParentFile(), "." + file.getName() + ".tmp").toPath();
+        Files.write(tmp, content);
+        try {
+            copyPermissions(file.toPath(), tmp);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            Files.deleteIfExists(tmp);
+            throw e;
         }
 
-        List<String> contents;
         try {
-            ByteBuffer bb = ByteBuffer.wrap(FileUtils.readFileToByteArray(file));
-            CharBuffer cb = charset.decode(bb);
-            bb = StandardCharsets.UTF_8.encode(cb);
-            contents = new String(bb.array(), StandardCharsets.UTF_8).lines().toList();
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The replacement keeps the permissions of the original file instead of the defaults for new files.
+     */
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        if (!Files.exists(source)) {
+            return;
+        }
+
+        PosixFileAttributeView posix = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        if (posix != null) {
+            Files.setPosixFilePermissions(target, posix.readAttributes().permissions());
+            return;
+        }
+
+        DosFileAttributeView dos = Files.getFileAttributeView(source, DosFileAttributeView.class);
+        if (dos != null) {
+            DosFileAttributes attrs = dos.readAttributes();
+            DosFileAttributeView view = Files.getFileAttributeView(target, DosFileAttributeView.class);
+            view.setReadOnly(attrs.isReadOnly());
+            view.setArchive(attrs.isArchive());
+            view.setSystem(attrs.isSystem());
+        }
+    }
+
+    //
+
+    public static TrackInfo load(File file) {
+        return load(file, false);
+    }
+
+    /**
+     * Load only the headers of the given file, the note lyrics are read from disk when they are first used.
+     */
+    public static TrackInfo loadHeaders(File file) {
+        return load(file, true);
+    }
+
+    private static TrackInfo load(File file, boolean lazy) {
+        BasicFileAttributes attrs;
+        byte[] bytes;
+        try {
+            // before reading, so a change while reading makes the recorded values outdated and not the offset
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            bytes = Files.readAllBytes(file.toPath());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        Map<String, String> headers = new HashMap<>();
-        int i = 0;
-        for (; i < contents.size(); i++) {
-            String line = contents.get(i);
-            if (!line.startsWith("#")) {
-                break;
+        Encoding encoding = encoding(bytes);
+
+        // in ascii compatible charsets the header lines can be found without decoding the note lyrics
+        if (lazy && encoding.isAsciiCompatible()) {
+            List<String> headerLines = new ArrayList<>();
+            int i = encoding.offset();
+            while (i < bytes.length && bytes[i] == '#') {
+                int end = i;
+                while (end < bytes.length && bytes[end] != '\n' && bytes[end] != '\r') {
+                    end++;
+                }
+                headerLines.add(new String(bytes, i, end - i, encoding.charset()));
+
+                if (end < bytes.length && bytes[end] == '\r') {
+                    end++;
+                }
+                if (end < bytes.length && bytes[end] == '\n') {
+                    end++;
+                }
+                i = end;
             }
 
+            return new TrackInfo(file, parseHeaders(headerLines), encoding.charset(), i,
+                    attrs.size(), attrs.lastModifiedTime().toMillis());
+        }
+
+        List<String> contents = new String(bytes, encoding.offset(), bytes.length - encoding.offset(), encoding.charset())
+                .lines().toList();
+
+        int i = 0;
+        while (i < contents.size() && contents.get(i).startsWith("#")) {
+            i++;
+        }
+
+        Map<String, String> headers = parseHeaders(contents.subList(0, i));
+        return new TrackInfo(file, headers, List.copyOf(contents.subList(i, contents.size())),
+                attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+
+    private static Map<String, String> parseHeaders(List<String> lines) {
+        Map<String, String> headers = new HashMap<>();
+        for (String line : lines) {
             String key = line.split(Pattern.quote(":"))[0].substring(1);
             String value = line.substring(key.length() + 2).trim();
             if (value.isBlank()) {
@@ -255,8 +531,6 @@ public class TrackInfo {
             headers.put(key.toUpperCase(), value);
         }
 
-        List<String> noteLyricLines = contents.subList(i, contents.size());
-
         if (headers.isEmpty() || !headers.containsKey("ARTIST") || !headers.containsKey("TITLE")) {
             throw new IllegalArgumentException("Required headers are missing from file.");
         }
@@ -276,7 +550,83 @@ public class TrackInfo {
             throw new IllegalArgumentException("Medley calculation must be disabled when using relative notes.");
         }
 
-        return new TrackInfo(file, headers, noteLyricLines);
+        return headers;
+    }
+
+    private record Encoding(Charset charset, int offset) {
+
+        private boolean isAsciiCompatible() {
+            return Arrays.equals("#\r\n".getBytes(charset), new byte[]{'#', '\r', '\n'});
+        }
+
+    }
+
+    private static Encoding encoding(byte[] bytes) {
+        // byte order marks
+        if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            return new Encoding(StandardCharsets.UTF_8, 3);
+        }
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+            return new Encoding(StandardCharsets.UTF_16BE, 2);
+        }
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+            return new Encoding(StandardCharsets.UTF_16LE, 2);
+        }
+
+        // most files are ascii or utf-8, only guess the charset when they are not
+        if (isValidUtf8(bytes)) {
+            return new Encoding(StandardCharsets.UTF_8, 0);
+        }
+
+        CharsetDetector detector = new CharsetDetector();
+        detector.setText(bytes);
+        return new Encoding(Charset.forName(detector.detect().getName()), 0);
+    }
+
+    private static boolean isValidUtf8(byte[] bytes) {
+        int i = 0;
+        while (i < bytes.length) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+
+            int length;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) {
+                length = 1;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                length = 2;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                length = 3;
+                min = 0x10000;
+            } else {
+                return false;
+            }
+
+            if (i + length >= bytes.length) {
+                return false;
+            }
+
+            int cp = b & (0x3F >> length);
+            for (int j = 1; j <= length; j++) {
+                int c = bytes[i + j] & 0xFF;
+                if ((c & 0xC0) != 0x80) {
+                    return false;
+                }
+                cp = (cp << 6) | (c & 0x3F);
+            }
+
+            // overlong encodings, surrogates and code points above the unicode range
+            if (cp < min || (cp >= 0xD800 && cp <= 0xDFFF) || cp > 0x10FFFF) {
+                return false;
+            }
+            i += length + 1;
+        }
+        return true;
     }
 
 }
@@ -0,0 +1,53 @@
+package be.jorisg.ultrastarorganizer.search;
+
+public class EditDistance {
+
+    /**
+     * Levenshtein distance between two strings, only computing the cells within {@code max} of the diagonal.
+     * Returns {@code max + 1} as soon as the distance is known to be larger than {@code max}.
+     */
+    public static int levenshtein(CharSequence a, CharSequence b, int max) {
+        int n = a.length();
+        int m = b.length();
+        int limit = max + 1;
+        if (Math.abs(n - m) > max) {
+            return limit;
+        }
+
+        int[] prev = new int[m + 2];
+        int[] cur = new int[m + 2];
+        for (int j = 0; j <= m; j++) {
+            prev[j] = Math.min(j, limit);
+        }
+        prev[m + 1] = limit;
+
+        for (int i = 1; i <= n; i++) {
+            int lo = Math.max(1, i - max);
+            int hi = Math.min(m, i + max);
+
+            cur[0] = Math.min(i, limit);
+            cur[lo - 1] = lo == 1 ? cur[0] : limit;
+            int rowMin = cur[lo - 1];
+
+            char c = a.charAt(i - 1);
+            for (int j = lo; j <= hi; j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(prev[j - 1] + cost, Math.min(prev[j], cur[j - 1]) + 1);
+                cur[j] = Math.min(value, limit);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            cur[hi + 1] = limit;
+
+            if (rowMin > max) {
+                return limit;
+            }
+
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+
+        return prev[m];
+    }
+
+}
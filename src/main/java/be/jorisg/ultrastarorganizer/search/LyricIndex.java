@@ -0,0 +1,307 @@
+package be.jorisg.ultrastarorganizer.search;
+
+import be.jorisg.ultrastarorganizer.domain.NoteLyric;
+import be.jorisg.ultrastarorganizer.domain.NoteLyricBlock;
+import be.jorisg.ultrastarorganizer.domain.NoteLyricCollection;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Positional index of the sung words of tracks, used to find phrases in the lyrics. Syllables are joined
+ * into words: a word ends at a syllable with a trailing space, before a syllable with a leading space and
+ * at a line break. Phrases do not continue from one singer block into the next.
+ */
+public class LyricIndex<T> {
+
+    // removed documents leave a null slot so the ids in the postings stay valid, until they are compacted
+    private final ArrayList<T> options = new ArrayList<>();
+    private final ArrayList<int[]> beats = new ArrayList<>();
+    private final Map<T, Integer> ids = new HashMap<>();
+    private int removed = 0;
+
+    // word -> (document id, position) pairs, ordered by id and position
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    public boolean contains(T option) {
+        return ids.containsKey(option);
+    }
+
+    public Set<T> options() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    public void index(T option, NoteLyricCollection lyrics) {
+        add(option, Document.of(lyrics));
+    }
+
+    /**
+     * Index the lyrics of all given options, the lyrics are loaded and split into words in parallel.
+     * Options for which the lyrics can not be loaded are skipped.
+     *
+     * @return the error message by option that could not be indexed
+     */
+    public Map<T, String> indexAll(Collection<T> options, Function<T, NoteLyricCollection> lyrics, int parallelism) {
+        List<T> list = List.copyOf(options);
+        List<ForkJoinTask<Document>> tasks = new ArrayList<>();
+        Map<T, String> failures = new LinkedHashMap<>();
+        try (ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism))) {
+            for (T option : list) {
+                tasks.add(pool.submit(() -> Document.of(lyrics.apply(option))));
+            }
+
+            // merge in submission order so the postings stay sorted
+            for (int i = 0; i < list.size(); i++) {
+                try {
+                    add(list.get(i), tasks.get(i).join());
+                } catch (RuntimeException e) {
+                    failures.put(list.get(i), String.valueOf(e.getMessage()));
+                }
+            }
+        }
+        return failures;
+    }
+
+    public void remove(T option) {
+        Integer id = ids.remove(option);
+        if (id == null) {
+            return;
+        }
+
+        options.set(id, null);
+        beats.set(id, null);
+        removed++;
+
+        // postings of removed documents are skipped while searching, compact once they are the majority
+        if (removed > ids.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Drop the postings of removed documents and renumber the remaining documents so their slots are
+     * reclaimed. Ids keep their order, so the postings stay sorted.
+     */
+    private void compact() {
+        int[] renumbered = new int[options.size()];
+        int count = 0;
+        for (int id = 0; id < options.size(); id++) {
+            T option = options.get(id);
+            if (option == null) {
+                renumbered[id] = -1;
+                continue;
+            }
+            renumbered[id] = count;
+            options.set(count, option);
+            beats.set(count, beats.get(id));
+            ids.put(option, count);
+            count++;
+        }
+
+        options.subList(count, options.size()).clear();
+        beats.subList(count, beats.size()).clear();
+        options.trimToSize();
+        beats.trimToSize();
+
+        postings.values().removeIf(p -> p.renumber(renumbered) == 0);
+        removed = 0;
+    }
+
+    private void add(T option, Document document) {
+        remove(option);
+
+        int id = options.size();
+        options.add(option);
+        beats.add(document.beats());
+        ids.put(option, id);
+
+        String[] words = document.words();
+        for (int position = 0; position < words.length; position++) {
+            if (words[position] != null) {
+                postings.computeIfAbsent(words[position], w -> new Postings()).add(id, position);
+            }
+        }
+    }
+
+    /**
+     * Find all occurrences of the words of the given phrase, in that order.
+     */
+    public List<Match<T>> search(String phrase) {
+        List<String> words = new ArrayList<>();
+        for (String part : phrase.split("\\s+")) {
+            String word = normalize(part);
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        // verify the occurrences of the rarest word against the other words
+        Postings[] lists = new Postings[words.size()];
+        int rarest = 0;
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(words.get(i));
+            if (lists[i] == null) {
+                return List.of();
+            }
+            if (lists[i].size < lists[rarest].size) {
+                rarest = i;
+            }
+        }
+
+        List<Match<T>> result = new ArrayList<>();
+        Postings p = lists[rarest];
+        for (int j = 0; j < p.size; j++) {
+            int id = p.data[j * 2];
+            int start = p.data[j * 2 + 1] - rarest;
+            if (start < 0 || options.get(id) == null) {
+                continue;
+            }
+
+            boolean match = true;
+            for (int i = 0; i < lists.length && match; i++) {
+                match = i == rarest || lists[i].contains(id, start + i);
+            }
+            if (match) {
+                result.add(new Match<>(options.get(id), beats.get(id)[start]));
+            }
+        }
+        return result;
+    }
+
+    //
+
+    public record Match<T>(T option, int beat) {
+    }
+
+    private record Document(String[] words, int[] beats) {
+
+        private static Document of(NoteLyricCollection lyrics) {
+            List<String> words = new ArrayList<>();
+            List<Integer> beats = new ArrayList<>();
+            StringBuilder word = new StringBuilder();
+            int beat = 0;
+
+            for (NoteLyricBlock block : lyrics.noteLyricBlocks()) {
+                if (!words.isEmpty()) {
+                    // gap between blocks
+                    words.add(null);
+                    beats.add(0);
+                }
+
+                for (int i = 0; i < block.size(); i++) {
+                    if (block.type(i) == NoteLyric.NoteType.BREAK) {
+                        end(word, beat, words, beats);
+                        continue;
+                    }
+
+                    String text = block.text(i);
+                    if (!text.isEmpty() && Character.isWhitespace(text.charAt(0))) {
+                        end(word, beat, words, beats);
+                    }
+                    if (word.isEmpty()) {
+                        beat = block.beat(i);
+                    }
+                    word.append(normalize(text));
+                    if (!text.isEmpty() && Character.isWhitespace(text.charAt(text.length() - 1))) {
+                        end(word, beat, words, beats);
+                    }
+                }
+                end(word, beat, words, beats);
+            }
+
+            return new Document(words.toArray(String[]::new), beats.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private static void end(StringBuilder word, int beat, List<String> words, List<Integer> beats) {
+            if (word.isEmpty()) {
+                return;
+            }
+            words.add(word.toString());
+            beats.add(beat);
+            word.setLength(0);
+        }
+    }
+
+    /**
+     * Lowercase letters and digits of the given text without accents, everything else is dropped.
+     */
+    private static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 128) {
+                // only decompose text that is not plain ascii
+                text = Normalizer.normalize(text, Normalizer.Form.NFD);
+                break;
+            }
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class Postings {
+
+        private int[] data = new int[4];
+        private int size = 0;
+
+        private void add(int id, int position) {
+            if (size * 2 == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size * 2] = id;
+            data[size * 2 + 1] = position;
+            size++;
+        }
+
+        private boolean contains(int id, int position) {
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = data[mid * 2] != id ? Integer.compare(data[mid * 2], id)
+                        : Integer.compare(data[mid * 2 + 1], position);
+                if (cmp == 0) {
+                    return true;
+                } else if (cmp < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Map the document ids to the given ids, postings of documents mapped to -1 are dropped.
+         *
+         * @return the amount of remaining postings
+         */
+        private int renumber(int[] ids) {
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                int id = ids[data[i * 2]];
+                if (id < 0) {
+                    continue;
+                }
+                data[j * 2] = id;
+                data[j * 2 + 1] = data[i * 2 + 1];
+                j++;
+            }
+            size = j;
+            return size;
+        }
+    }
+
+}
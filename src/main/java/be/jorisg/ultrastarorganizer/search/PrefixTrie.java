@@ -0,0 +1,164 @@
+package be.jorisg.ultrastarorganizer.search;
+
+import java.util.*;
+
+/**
+ * Trie of strings for prefix completion, ignoring case. Children are kept in sorted arrays so lookups
+ * only cost the length of the prefix plus the amount of returned values. A value that is added multiple
+ * times stays in the trie until it is removed as many times.
+ */
+public class PrefixTrie {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root = new Node();
+
+    public void add(String value) {
+        String key = value.toLowerCase(Locale.ROOT);
+        Node node = root;
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.child(key.charAt(i), true);
+            path.add(node);
+        }
+
+        if (node.values == null) {
+            node.values = new HashMap<>(2);
+        }
+        if (node.values.merge(value, 1, Integer::sum) == 1) {
+            path.forEach(n -> n.size++);
+        }
+    }
+
+    public void remove(String value) {
+        String key = value.toLowerCase(Locale.ROOT);
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].child(key.charAt(i), false);
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+
+        Node node = path[key.length()];
+        Integer count = node.values == null ? null : node.values.get(value);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            node.values.put(value, count - 1);
+            return;
+        }
+
+        node.values.remove(value);
+        for (Node n : path) {
+            n.size--;
+        }
+
+        // drop the nodes that no longer lead to a value
+        for (int i = key.length(); i > 0; i--) {
+            if (path[i].size == 0) {
+                path[i - 1].removeChild(key.charAt(i - 1));
+            }
+        }
+    }
+
+    /**
+     * The amount of distinct values in this trie.
+     */
+    public int size() {
+        return root.size;
+    }
+
+    /**
+     * At most {@code limit} values that start with the given prefix, ignoring case, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i), false);
+        }
+        if (node == null) {
+            return List.of();
+        }
+
+        List<String> result = new ArrayList<>(Math.min(limit, node.size));
+        collect(node, limit, result);
+        return result;
+    }
+
+    private void collect(Node node, int limit, List<String> result) {
+        if (node.values != null) {
+            for (String value : new TreeSet<>(node.values.keySet())) {
+                if (result.size() == limit) {
+                    return;
+                }
+                result.add(value);
+            }
+        }
+        for (Node child : node.children) {
+            if (result.size() == limit) {
+                return;
+            }
+            collect(child, limit, result);
+        }
+    }
+
+    //
+
+    private static class Node {
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+
+        // values that end at this node with the amount of times they were added
+        private Map<String, Integer> values;
+
+        // distinct values in this node and its children
+        private int size = 0;
+
+        private Node child(char c, boolean create) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            if (!create) {
+                return null;
+            }
+
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newKeys[insert] = c;
+            newChildren[insert] = new Node();
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            keys = newKeys;
+            children = newChildren;
+            return children[insert];
+        }
+
+        private void removeChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index < 0) {
+                return;
+            }
+
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            keys = newKeys;
+            children = newChildren;
+        }
+    }
+
+}
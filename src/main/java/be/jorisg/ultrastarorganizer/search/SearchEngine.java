@@ -1,27 +1,331 @@
 package be.jorisg.ultrastarorganizer.search;
 
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.Normalizer;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class SearchEngine<T> {
 
+    private final static int CACHE_SIZE = 64;
+
+    private final static int MAGIC = 0x55534F53;
+    private final static int VERSION = 2;
+
+    // phonetic keys are stored as tokens with this prefix, literal tokens never contain it
+    private final static String PHONETIC_PREFIX = "#";
+    private final static double PHONETIC_WEIGHT = 0.5;
+
     private final static Pattern[] BRACKET_PATTERNS = new Pattern[]{
             Pattern.compile("[(]([^)]*)[)]"),
             Pattern.compile("\\[([^\\]]*)\\]"),
     };
 
-    private final Set<Index<T>> indexes = new HashSet<>();
+    // removed indexes leave a null slot so the ids in the postings stay valid, until they are compacted
+    private final ArrayList<Index<T>> indexes = new ArrayList<>();
+    private int removed = 0;
+
+    // token -> (index id, block) pairs of all blocks that contain the token
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    // trigram -> tokens in the postings, used to find tokens close to a misspelled input word
+    private final Map<String, List<String>> trigrams = new HashMap<>();
+
+    private final DoubleMetaphone metaphone;
+
+    // the repl often repeats the same query, cleared when the indexes change
+    private final Map<Query, List<SearchResult<T>>> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Query, List<SearchResult<T>>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public SearchEngine() {
+        this(false);
+    }
+
+    /**
+     * @param phonetic also match words that sound like the input, e.g. "craftwerk" and "kraftwerk". These
+     *                 matches count for less than literal matches.
+     */
+    public SearchEngine(boolean phonetic) {
+        if (phonetic) {
+            metaphone = new DoubleMetaphone();
+            metaphone.setMaxCodeLen(6);
+        } else {
+            metaphone = null;
+        }
+    }
 
     public void index(T option, String key) {
         key = normalize(key);
-        indexes.add(new Index<T>(option, key, parse(key)));
+        KeyBlock[] blocks = parse(key);
+        double weight = Arrays.stream(blocks).reduce(0d, (a, b) -> a + b.weight, Double::sum);
+
+        cache.clear();
+
+        int id = indexes.size();
+        indexes.add(new Index<T>(option, key, blocks, weight));
+
+        for (int b = 0; b < blocks.length; b++) {
+            for (String value : new LinkedHashSet<>(Arrays.asList(blocks[b].values))) {
+                postings(value).add(id, b);
+            }
+            for (String value : phonetic(blocks[b].values)) {
+                postings(value).add(id, b);
+            }
+        }
+    }
+
+    /**
+     * Distinct phonetic keys of the given tokens, empty when phonetic matching is disabled.
+     */
+    private Set<String> phonetic(String[] tokens) {
+        if (metaphone == null) {
+            return Set.of();
+        }
+
+        Set<String> result = new LinkedHashSet<>();
+        for (String token : tokens) {
+            String key = phonetic(token);
+            if (key != null) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    private String phonetic(String token) {
+        if (metaphone == null || token.length() < 3) {
+            return null;
+        }
+        String code = metaphone.encode(token);
+        return code == null || code.isEmpty() ? null : PHONETIC_PREFIX + code;
+    }
+
+    private Postings postings(String token) {
+        return postings.computeIfAbsent(token, v -> {
+            if (v.startsWith(PHONETIC_PREFIX)) {
+                return new Postings();
+            }
+            for (String trigram : trigrams(v)) {
+                trigrams.computeIfAbsent(trigram, t -> new ArrayList<>()).add(v);
+            }
+            return new Postings();
+        });
     }
 
     public void remove(T option) {
-        indexes.removeIf(i -> i.option.equals(option));
+        removeAll(Set.of(option));
+    }
+
+    public void removeAll(Collection<T> options) {
+        for (int id = 0; id < indexes.size(); id++) {
+            Index<T> index = indexes.get(id);
+            if (index == null || !options.contains(index.option)) {
+                continue;
+            }
+
+            cache.clear();
+            indexes.set(id, null);
+            removed++;
+            for (KeyBlock block : index.blocks) {
+                Set<String> values = new LinkedHashSet<>(Arrays.asList(block.values));
+                values.addAll(phonetic(block.values));
+                for (String value : values) {
+                    Postings p = postings.get(value);
+                    if (p != null && p.remove(id) && p.size == 0) {
+                        postings.remove(value);
+                        if (value.startsWith(PHONETIC_PREFIX)) {
+                            continue;
+                        }
+                        for (String trigram : trigrams(value)) {
+                            List<String> tokens = trigrams.get(trigram);
+                            tokens.remove(value);
+                            if (tokens.isEmpty()) {
+                                trigrams.remove(trigram);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (removed > indexes.size() - removed) {
+            compact();
+        }
+    }
+
+    /**
+     * Renumber the indexes so the slots of removed indexes are reclaimed. Ids keep their order, so the
+     * postings stay sorted.
+     */
+    private void compact() {
+        int[] ids = new int[indexes.size()];
+        List<Index<T>> live = new ArrayList<>(indexes.size() - removed);
+        for (int id = 0; id < indexes.size(); id++) {
+            Index<T> index = indexes.get(id);
+            ids[id] = index == null ? -1 : live.size();
+            if (index != null) {
+                live.add(index);
+            }
+        }
+
+        indexes.clear();
+        indexes.addAll(live);
+        indexes.trimToSize();
+        postings.values().forEach(p -> p.renumber(ids));
+        removed = 0;
+    }
+
+    /**
+     * Write all indexes to the given file so they can be restored with {@link #read(File, Function)} without
+     * parsing the keys again. Options are stored by the identifier returned by the given function.
+     */
+    public void write(File file, Function<T, String> identifier) throws IOException {
+        // ids in the file skip removed indexes
+        int[] ids = new int[indexes.size()];
+        int count = 0;
+        for (int id = 0; id < indexes.size(); id++) {
+            ids[id] = indexes.get(id) == null ? -1 : count++;
+        }
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(metaphone != null);
+
+            // document table
+            out.writeInt(count);
+            for (Index<T> index : indexes) {
+                if (index == null) {
+                    continue;
+                }
+                writeString(out, identifier.apply(index.option));
+                writeString(out, index.key);
+                out.writeInt(index.blocks.length);
+                for (KeyBlock block : index.blocks) {
+                    out.writeDouble(block.weight);
+                    out.writeInt(block.values.length);
+                    for (String value : block.values) {
+                        writeString(out, value);
+                    }
+                }
+            }
+
+            // token dictionary with postings
+            List<String> tokens = postings.keySet().stream().sorted().toList();
+            out.writeInt(tokens.size());
+            for (String token : tokens) {
+                Postings p = postings.get(token);
+                writeString(out, token);
+                out.writeInt(p.size);
+                for (int i = 0; i < p.size; i++) {
+                    out.writeInt(ids[p.data[i * 2]]);
+                    out.writeInt(p.data[i * 2 + 1]);
+                }
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Add the indexes stored by {@link #write(File, Function)} to this engine. Indexes whose identifier is
+     * resolved to {@code null} are skipped, these have to be indexed again.
+     *
+     * @return the options that were added
+     */
+    public List<T> read(File file, Function<String, T> resolver) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readBoolean() != (metaphone != null)) {
+                return List.of();
+            }
+
+            cache.clear();
+
+            // ids in the file -> ids in this engine
+            int count = in.readInt();
+            int[] ids = new int[count];
+            List<T> result = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                T option = resolver.apply(readString(in));
+                String key = readString(in);
+                KeyBlock[] blocks = new KeyBlock[in.readInt()];
+                double weight = 0;
+                for (int b = 0; b < blocks.length; b++) {
+                    double w = in.readDouble();
+                    String[] values = new String[in.readInt()];
+                    for (int v = 0; v < values.length; v++) {
+                        values[v] = readString(in);
+                    }
+                    blocks[b] = new KeyBlock(values, w);
+                    weight += w;
+                }
+
+                if (option == null) {
+                    ids[i] = -1;
+                    continue;
+                }
+
+                ids[i] = indexes.size();
+                indexes.add(new Index<>(option, key, blocks, weight));
+                result.add(option);
+            }
+
+            int tokens = in.readInt();
+            for (int i = 0; i < tokens; i++) {
+                String token = readString(in);
+                int size = in.readInt();
+
+                Postings p = null;
+                for (int j = 0; j < size; j++) {
+                    int id = ids[in.readInt()];
+                    int block = in.readInt();
+                    if (id < 0) {
+                        continue;
+                    }
+                    if (p == null) {
+                        p = postings(token);
+                    }
+                    p.add(id, block);
+                }
+            }
+
+            return result;
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid search index: " + file, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     public SearchResult<T> searchOne(String input) {
@@ -34,6 +338,22 @@ public class SearchEngine<T> {
     }
 
     public List<SearchResult<T>> search(String input, int limit) {
+        return search(input, limit, null);
+    }
+
+    /**
+     * Search only the options that match the given filter, options that don't match are not scored.
+     */
+    public List<SearchResult<T>> search(String input, int limit, Predicate<T> filter) {
+        return search(input, limit, filter, null);
+    }
+
+    /**
+     * Search only the options that match the given filter. The result is cached by the input, the limit and
+     * the given filter key, which must be equal for filters that accept the same options. Filtered searches
+     * without a key are not cached.
+     */
+    public List<SearchResult<T>> search(String input, int limit, Predicate<T> filter, Object filterKey) {
         input = normalize(input);
         input = input.replaceAll("[^A-Za-z0-9 ]+", "");
         input = input.replace("ft.", "");
@@ -42,18 +362,154 @@ public class SearchEngine<T> {
             input = pattern.matcher(input).replaceAll("");
         }
         input = input.replaceAll("  ", " ").trim();
-        String[] words = input.split(" ");
 
-        PriorityQueue<SearchResult<T>> results = new PriorityQueue<>(Comparator.reverseOrder());
+        if (filter != null && filterKey == null) {
+            return search(input.split(" "), limit, filter);
+        }
+
+        Query query = new Query(input, limit, filterKey);
+        List<SearchResult<T>> cached = cache.get(query);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<SearchResult<T>> result = search(input.split(" "), limit, filter);
+        cache.put(query, result);
+        return result;
+    }
+
+    private List<SearchResult<T>> search(String[] words, int limit, Predicate<T> filter) {
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        // only indexes that share at least one token with the input can have a score, literal postings of a
+        // word come before its phonetic postings
+        Set<String> distinct = new LinkedHashSet<>(Arrays.asList(words));
+        Set<String> tokens = new HashSet<>();
+        List<Cursor> cursors = new ArrayList<>();
+        int w = 0;
+        for (String word : distinct) {
+            w++;
+
+            String token = postings.containsKey(word) ? word : closest(word);
+            if (token != null && tokens.add(token)) {
+                cursors.add(new Cursor(postings.get(token), w, false));
+            }
+
+            // blocks that contain the word literally are skipped
+            String key = phonetic(word);
+            if (key != null && postings.containsKey(key) && tokens.add(key)) {
+                cursors.add(new Cursor(postings.get(key), w, true));
+            }
+        }
+
+        // keep the best results in a bounded heap with the worst result on top
+        Comparator<Ranked<T>> order = Comparator.<Ranked<T>>comparingDouble(r -> -r.result().score)
+                .thenComparingInt(Ranked::seq);
+        PriorityQueue<Ranked<T>> results = new PriorityQueue<>(Math.min(limit, 64), order.reversed());
+
+        // the postings are ordered by id, so they are merged and every candidate is scored and offered to
+        // the heap as soon as all its hits are known
+        int seq = 0;
+        while (true) {
+            int id = Integer.MAX_VALUE;
+            for (Cursor cursor : cursors) {
+                if (cursor.position < cursor.postings.size) {
+                    id = Math.min(id, cursor.postings.data[cursor.position * 2]);
+                }
+            }
+            if (id == Integer.MAX_VALUE) {
+                break;
+            }
+
+            Index<T> index = indexes.get(id);
+            Hits hits = filter == null || filter.test(index.option)
+                    ? new Hits(index.blocks.length, metaphone != null) : null;
+            for (Cursor cursor : cursors) {
+                Postings p = cursor.postings;
+                while (cursor.position < p.size && p.data[cursor.position * 2] == id) {
+                    if (hits != null) {
+                        hits.add(p.data[cursor.position * 2 + 1], cursor.word, cursor.phonetic);
+                    }
+                    cursor.position++;
+                }
+            }
+            if (hits == null) {
+                continue;
+            }
+
+            SearchResult<T> result = index.match(hits, distinct.size(), words.length);
+            if (result.score <= 0) {
+                continue;
+            }
+
+            Ranked<T> ranked = new Ranked<>(result, seq++);
+            if (results.size() < limit) {
+                results.add(ranked);
+            } else if (order.compare(ranked, results.peek()) < 0) {
+                results.poll();
+                results.add(ranked);
+            }
+        }
+
+        return results.stream().sorted(order).map(Ranked::result).toList();
+    }
+
+    /**
+     * Find the token that is closest to a word that does not occur in any index. Only tokens that share
+     * enough trigrams with the word are compared, the allowed edit distance depends on the word length.
+     * Ties are broken by the amount of blocks that contain the token.
+     */
+    private String closest(String word) {
+        int max = word.length() < 4 ? 0 : word.length() < 8 ? 1 : 2;
+        if (max == 0) {
+            return null;
+        }
+
+        // every edit changes at most 3 trigrams of the word
+        Set<String> grams = trigrams(word);
+        int required = grams.size() - max * 3;
+
+        Map<String, Integer> shared = new HashMap<>();
+        for (String gram : grams) {
+            for (String token : trigrams.getOrDefault(gram, List.of())) {
+                shared.merge(token, 1, Integer::sum);
+            }
+        }
+
+        String best = null;
+        int bestDistance = max + 1;
+        for (Map.Entry<String, Integer> e : shared.entrySet()) {
+            String token = e.getKey();
+            if (e.getValue() < required || Math.abs(token.length() - word.length()) > max) {
+                continue;
+            }
+
+            int distance = EditDistance.levenshtein(word, token, max);
+            if (distance > max) {
+                continue;
+            }
 
-        for (Index<T> index : indexes) {
-            SearchResult<T> result = index.match(words);
-            if (result.score > 0) results.add(result);
+            if (best == null || distance < bestDistance
+                    || (distance == bestDistance && compareFrequency(token, best) < 0)) {
+                best = token;
+                bestDistance = distance;
+            }
         }
+        return best;
+    }
+
+    private int compareFrequency(String a, String b) {
+        int result = Integer.compare(postings.get(b).size, postings.get(a).size);
+        return result != 0 ? result : a.compareTo(b);
+    }
 
-        List<SearchResult<T>> result = new ArrayList<>();
-        for (int i = 0; i < limit && i < results.size(); i++) {
-            result.add(results.poll());
+    private static Set<String> trigrams(String token) {
+        String padded = "$$" + token + "$$";
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
         }
         return result;
     }
@@ -65,24 +521,50 @@ public class SearchEngine<T> {
         return str;
     }
 
-    private record Index<T>(T option, String key, KeyBlock[] blocks) {
+    private record Query(String input, int limit, Object filterKey) {
+    }
+
+    private record Ranked<T>(SearchResult<T> result, int seq) {
+    }
+
+    /**
+     * Position in the postings of an input word.
+     */
+    private static class Cursor {
 
-        private SearchResult<T> match(String[] words) {
-            double weight = Arrays.stream(blocks).reduce(0d, (a, b) -> a + b.weight, Double::sum);
+        private final Postings postings;
+        private final int word;
+        private final boolean phonetic;
+        private int position = 0;
+
+        private Cursor(Postings postings, int word, boolean phonetic) {
+            this.postings = postings;
+            this.word = word;
+            this.phonetic = phonetic;
+        }
+    }
+
+    private record Index<T>(T option, String key, KeyBlock[] blocks, double weight) {
+
+        /**
+         * @param hits     the input words found in this index
+         * @param distinct the amount of distinct input words
+         * @param total    the amount of input words
+         */
+        private SearchResult<T> match(Hits hits, int distinct, int total) {
             double score = 0;
-            Set<String> missing = new HashSet<>(Arrays.asList(words));
 
-            for (KeyBlock block : blocks) {
-                Set<String> match = Arrays.stream(words)
-                        .filter(s -> List.of(block.values).contains(s))
-                        .collect(Collectors.toSet());
-                missing.removeAll(match);
+            for (int b = 0; b < blocks.length; b++) {
+                KeyBlock block = blocks[b];
                 double w = block.weight / weight;
-                double bs = (match.size() / (double) block.values.length) * w;
+                double found = hits.phonetic == null ? hits.counts[b]
+                        : Math.min(block.values.length, hits.counts[b] + hits.phonetic[b] * PHONETIC_WEIGHT);
+                double bs = (found / block.values.length) * w;
                 score += bs;
             }
 
-            double penalty = Math.pow(missing.size() / (double) words.length, 2);
+            int missing = distinct - hits.found;
+            double penalty = Math.pow(missing / (double) total, 2);
             score *= 1 - penalty;
 
             return new SearchResult<T>(option, score);
@@ -90,6 +572,84 @@ public class SearchEngine<T> {
 
     }
 
+    private static class Hits {
+
+        // distinct input words found per block, literally and only phonetically
+        private final int[] counts;
+        private final int[] phonetic;
+
+        // last input word found literally per block, only used for phonetic matching
+        private final int[] words;
+
+        // distinct input words found in any block
+        private int found = 0;
+        private int last = 0;
+
+        private Hits(int blocks, boolean phonetic) {
+            this.counts = new int[blocks];
+            this.phonetic = phonetic ? new int[blocks] : null;
+            this.words = phonetic ? new int[blocks] : null;
+        }
+
+        /**
+         * Input words have to be added in order.
+         */
+        private void add(int block, int word, boolean phonetic) {
+            if (phonetic) {
+                if (words[block] == word) {
+                    return;
+                }
+                this.phonetic[block]++;
+            } else {
+                counts[block]++;
+                if (words != null) {
+                    words[block] = word;
+                }
+            }
+
+            if (last != word) {
+                found++;
+                last = word;
+            }
+        }
+    }
+
+    private static class Postings {
+
+        private int[] data = new int[4];
+        private int size = 0;
+
+        private void add(int id, int block) {
+            if (size * 2 == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size * 2] = id;
+            data[size * 2 + 1] = block;
+            size++;
+        }
+
+        private boolean remove(int id) {
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                if (data[i * 2] == id) {
+                    continue;
+                }
+                data[j * 2] = data[i * 2];
+                data[j * 2 + 1] = data[i * 2 + 1];
+                j++;
+            }
+            boolean removed = j != size;
+            size = j;
+            return removed;
+        }
+
+        private void renumber(int[] ids) {
+            for (int i = 0; i < size; i++) {
+                data[i * 2] = ids[data[i * 2]];
+            }
+        }
+    }
+
     public record SearchResult<T>(T option, double score) implements Comparable<SearchResult<T>> {
         @Override
         public int compareTo(SearchResult o) {
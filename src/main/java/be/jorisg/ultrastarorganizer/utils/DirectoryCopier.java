@@ -0,0 +1,374 @@
+package be.jorisg.ultrastarorganizer.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Copies directories with a fixed amount of directories in progress at the same time. Files are copied
+ * with {@link FileChannel#transferTo} so the kernel can move the data without copying it to the heap,
+ * or linked depending on the {@link LinkMode}. Modification times are preserved.
+ * <p>
+ * Clones are created by cp, with one process per directory. A link type that failed once is not tried
+ * again between the same filesystems.
+ */
+public class DirectoryCopier {
+
+    public enum LinkMode {
+        /**
+         * Copy all bytes.
+         */
+        COPY,
+        /**
+         * Create hard links, the copy shares the file with the source.
+         */
+        HARDLINK,
+        /**
+         * Create copy-on-write clones, only supported by some filesystems (btrfs, xfs, apfs).
+         */
+        REFLINK,
+        /**
+         * Clone when possible, otherwise create hard links, otherwise copy.
+         */
+        AUTO
+    }
+
+    private final int concurrency;
+    private final LinkMode mode;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong linked = new AtomicLong();
+    private long nanos = 0;
+
+    // at most this many files are cloned by a single cp process, to stay below the argument limit
+    private static final int REFLINK_BATCH = 256;
+
+    // stop trying a link type between two filesystems once it is known that they don't support it
+    private final Set<Filesystems> reflinkFailed = ConcurrentHashMap.newKeySet();
+    private final Set<Filesystems> hardlinkFailed = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Optional<FileStore>> stores = new ConcurrentHashMap<>();
+
+    public DirectoryCopier(int concurrency) {
+        this(concurrency, LinkMode.COPY);
+    }
+
+    public DirectoryCopier(int concurrency, LinkMode mode) {
+        this.concurrency = Math.max(1, concurrency);
+        this.mode = mode;
+    }
+
+    /**
+     * Copy each source directory to a directory with the same name in the target directory.
+     *
+     * @param started called before a directory is copied, from the thread that copies it
+     * @return the directories that could not be copied with the reason, in the order of the sources
+     */
+    public Map<File, String> copy(List<File> sources, File target, Consumer<File> started) {
+        return copyAll(sources, started, source -> {
+            Path dest = target.toPath().resolve(source.getName());
+            if (!reflinkDirectory(source.toPath(), dest)) {
+                copyDirectory(source.toPath(), dest);
+            }
+        });
+    }
+
+    /**
+     * Copy the given files, relative to the source directory, to the same path in the target directory.
+     * Missing parent directories are created.
+     *
+     * @param started called before a file is copied, from the thread that copies it
+     * @return the files that could not be copied with the reason, in the order of the paths
+     */
+    public Map<String, String> copyFiles(File source, File target, Collection<String> paths, Consumer<String> started) {
+        // files in the same directory are copied together, so they can be cloned by a single process
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String path : paths) {
+            Path parent = Path.of(path).getParent();
+            groups.computeIfAbsent(parent == null ? "" : parent.toString(), k -> new ArrayList<>()).add(path);
+        }
+
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        Map<List<String>, String> groupFailures = copyAll(groups.values(), group -> group.forEach(started), group -> {
+            Path dir = target.toPath().resolve(group.get(0)).getParent();
+            Files.createDirectories(dir);
+            if (reflink(group.stream().map(path -> source.toPath().resolve(path)).toList(), dir)) {
+                return;
+            }
+
+            for (String path : group) {
+                try {
+                    Path file = source.toPath().resolve(path);
+                    Path dest = target.toPath().resolve(path);
+                    copyFile(file, dest);
+                    Files.setLastModifiedTime(dest, Files.getLastModifiedTime(file));
+                } catch (IOException e) {
+                    failures.put(path, e.getMessage());
+                }
+            }
+        });
+        groupFailures.forEach((group, error) -> group.forEach(path -> failures.putIfAbsent(path, error)));
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String path : paths) {
+            if (failures.containsKey(path)) {
+                result.put(path, failures.get(path));
+            }
+        }
+        return result;
+    }
+
+    private <T> Map<T, String> copyAll(Collection<T> items, Consumer<T> started, CopyTask<T> task) {
+        Map<T, Future<?>> futures = new LinkedHashMap<>();
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(concurrency)) {
+            for (T item : items) {
+                futures.put(item, executor.submit(() -> {
+                    started.accept(item);
+                    task.copy(item);
+                    return null;
+                }));
+            }
+        }
+
+        nanos += System.nanoTime() - start;
+
+        // all tasks are done, get() only reports how they ended
+        Map<T, String> failures = new LinkedHashMap<>();
+        for (Map.Entry<T, Future<?>> e : futures.entrySet()) {
+            try {
+                e.getValue().get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                failures.put(e.getKey(), cause instanceof IOException ? cause.getMessage() : cause.toString());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failures.put(e.getKey(), "Interrupted.");
+            }
+        }
+        return failures;
+    }
+
+    @FunctionalInterface
+    private interface CopyTask<T> {
+        void copy(T item) throws IOException;
+    }
+
+    /**
+     * The total amount of copied bytes.
+     */
+    public long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * The amount of files that were linked instead of copied.
+     */
+    public long linked() {
+        return linked.get();
+    }
+
+    /**
+     * The average throughput of all copies in megabytes per second.
+     */
+    public double megabytesPerSecond() {
+        return nanos == 0 ? 0 : (bytes.get() / 1_000_000d) / (nanos / 1_000_000_000d);
+    }
+
+    //
+
+    private void copyDirectory(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path dest = target.resolve(source.relativize(file).toString());
+                copyFile(file, dest);
+                Files.setLastModifiedTime(dest, attrs.lastModifiedTime());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                Path dest = target.resolve(source.relativize(dir).toString());
+                Files.setLastModifiedTime(dest, Files.getLastModifiedTime(dir));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void copyFile(Path source, Path target) throws IOException {
+        if (mode == LinkMode.HARDLINK || mode == LinkMode.AUTO) {
+            Filesystems filesystems = filesystems(source.getParent(), target.getParent());
+            if (!hardlinkFailed.contains(filesystems)) {
+                try {
+                    Files.deleteIfExists(target);
+                    Files.createLink(target, source);
+                    linked.incrementAndGet();
+                    return;
+                } catch (UnsupportedOperationException e) {
+                    hardlinkFailed.add(filesystems);
+                } catch (IOException e) {
+                    // other errors, e.g. missing permissions, only affect this file
+                    if (isCrossDevice(e)) {
+                        hardlinkFailed.add(filesystems);
+                    }
+                }
+            }
+        }
+
+        // the target may be a link to the source, writing into it would truncate the source
+        Files.deleteIfExists(target);
+
+        try (
+                FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+        ) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long count = in.transferTo(position, size - position, out);
+                if (count <= 0) {
+                    break; // the file was truncated while copying
+                }
+                position += count;
+                bytes.addAndGet(count);
+            }
+        }
+    }
+
+    /**
+     * Clone the whole source directory with a single process.
+     *
+     * @return false if the directory has to be copied file by file
+     */
+    private boolean reflinkDirectory(Path source, Path target) throws IOException {
+        if (!reflinkEnabled(source, target.getParent())) {
+            return false;
+        }
+
+        Files.createDirectories(target);
+        List<String> command = reflinkCommand(true);
+        command.add(source.resolve(".").toString());
+        command.add(target.toString());
+        if (!run(command)) {
+            reflinkFailed.add(filesystems(source, target.getParent()));
+            return false;
+        }
+
+        try (var files = Files.walk(source)) {
+            linked.addAndGet(files.filter(Files::isRegularFile).count());
+        }
+        return true;
+    }
+
+    /**
+     * Clone the given files into the target directory, in batches of {@link #REFLINK_BATCH} files.
+     *
+     * @return false if the files have to be copied one by one
+     */
+    private boolean reflink(List<Path> files, Path target) {
+        if (!reflinkEnabled(files.get(0).getParent(), target)) {
+            return false;
+        }
+
+        for (int i = 0; i < files.size(); i += REFLINK_BATCH) {
+            List<Path> batch = files.subList(i, Math.min(files.size(), i + REFLINK_BATCH));
+            List<String> command = reflinkCommand(false);
+            batch.forEach(file -> command.add(file.toString()));
+            command.add(target.toString());
+            if (!run(command)) {
+                reflinkFailed.add(filesystems(files.get(0).getParent(), target));
+                return false;
+            }
+            linked.addAndGet(batch.size());
+        }
+        return true;
+    }
+
+    private boolean reflinkEnabled(Path source, Path target) {
+        return (mode == LinkMode.REFLINK || mode == LinkMode.AUTO) && reflinkCommand(false) != null
+                && !reflinkFailed.contains(filesystems(source, target));
+    }
+
+    /**
+     * Java has no api for copy-on-write clones, use cp on the platforms where it supports them. The
+     * modification times are preserved by cp.
+     *
+     * @return the command without the files, or null if clones are not supported on this platform
+     */
+    private static List<String> reflinkCommand(boolean recursive) {
+        String os = System.getProperty("os.name").toLowerCase();
+        List<String> command = new ArrayList<>();
+        command.add("cp");
+        if (recursive) {
+            command.add("-R");
+        }
+        if (os.contains("linux")) {
+            command.add("--reflink=always");
+            command.add("--preserve=timestamps");
+        } else if (os.contains("mac")) {
+            command.add("-c");
+            command.add("-p");
+        } else {
+            return null;
+        }
+        command.add("--");
+        return command;
+    }
+
+    private static boolean run(List<String> command) {
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            // cp is not available
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean isCrossDevice(IOException e) {
+        String reason = e instanceof FileSystemException fse ? fse.getReason() : null;
+        return reason != null && (reason.contains("cross-device") || reason.contains("different disk drive"));
+    }
+
+    private Filesystems filesystems(Path source, Path target) {
+        return new Filesystems(store(source), store(target));
+    }
+
+    private FileStore store(Path directory) {
+        return stores.computeIfAbsent(directory, dir -> {
+            try {
+                return Optional.of(Files.getFileStore(dir));
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    private record Filesystems(FileStore source, FileStore target) {
+    }
+
+}
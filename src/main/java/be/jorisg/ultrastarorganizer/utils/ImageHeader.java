@@ -0,0 +1,139 @@
+package be.jorisg.ultrastarorganizer.utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The format and dimensions of a JPEG or PNG image, read from the structure of the file without decoding
+ * the pixels. Reading fails when the file is not a JPEG or PNG image or when it is truncated: a PNG image
+ * must end with an IEND chunk and a JPEG image must contain a frame, a scan and an end marker. Only the
+ * headers and the end of the file are read.
+ */
+public record ImageHeader(Format format, int width, int height) {
+
+    public enum Format {
+        JPEG, PNG
+    }
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_IHDR = 0x49484452;
+    private static final int PNG_IEND = 0x49454E44;
+    private static final int PNG_IEND_CRC = 0xAE426082;
+
+    // the end of an image may be followed by some garbage
+    private static final int TAIL = 1 << 16;
+
+    public static ImageHeader read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = read(channel, 0, 8);
+            if (buffer.getLong(0) == PNG_SIGNATURE) {
+                return png(channel);
+            }
+            if ((buffer.getShort(0) & 0xFFFF) == 0xFFD8) {
+                return jpeg(channel);
+            }
+            throw new IOException("Not a JPEG or PNG image.");
+        }
+    }
+
+    //
+
+    private static ImageHeader png(FileChannel channel) throws IOException {
+        // the first chunk is always IHDR
+        ByteBuffer ihdr = read(channel, 8, 16);
+        if (ihdr.getInt(0) != 13 || ihdr.getInt(4) != PNG_IHDR) {
+            throw new IOException("PNG image has no IHDR chunk.");
+        }
+        int width = ihdr.getInt(8);
+        int height = ihdr.getInt(12);
+        if (width <= 0 || height <= 0) {
+            throw new IOException("PNG image has invalid dimensions.");
+        }
+
+        // the IEND chunk is always empty, so it has the same length, type and crc in every image
+        long size = channel.size();
+        long start = Math.max(8 + 12 + 13, size - TAIL);
+        ByteBuffer tail = read(channel, start, (int) Math.max(0, size - start));
+        for (int i = tail.limit() - 12; i >= 0; i--) {
+            if (tail.getInt(i) == 0 && tail.getInt(i + 4) == PNG_IEND && tail.getInt(i + 8) == PNG_IEND_CRC) {
+                return new ImageHeader(Format.PNG, width, height);
+            }
+        }
+        throw new IOException("PNG image is truncated.");
+    }
+
+    private static ImageHeader jpeg(FileChannel channel) throws IOException {
+        int width = -1;
+        int height = -1;
+
+        long position = 2;
+        while (true) {
+            ByteBuffer segment = read(channel, position, 4);
+            if ((segment.get(0) & 0xFF) != 0xFF) {
+                throw new IOException("JPEG image has an invalid marker.");
+            }
+
+            int marker = segment.get(1) & 0xFF;
+            if (marker == 0xFF) {
+                position++; // fill byte
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                position += 2; // markers without length
+                continue;
+            }
+
+            int length = segment.getShort(2) & 0xFFFF;
+            if (length < 2) {
+                throw new IOException("JPEG image has an invalid segment.");
+            }
+
+            // start of frame, except for DHT (C4), JPG (C8) and DAC (CC)
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                ByteBuffer frame = read(channel, position + 4, 5);
+                height = frame.getShort(1) & 0xFFFF;
+                width = frame.getShort(3) & 0xFFFF;
+            }
+
+            // start of scan, the compressed data follows
+            if (marker == 0xDA) {
+                break;
+            }
+            if (marker == 0xD9) {
+                throw new IOException("JPEG image has no scan.");
+            }
+
+            position += 2 + length;
+        }
+
+        if (width <= 0 || height <= 0) {
+            throw new IOException("JPEG image has no valid frame.");
+        }
+
+        // the end marker must be near the end of the file
+        long size = channel.size();
+        long start = Math.max(position, size - TAIL);
+        ByteBuffer tail = read(channel, start, (int) (size - start));
+        for (int i = tail.limit() - 2; i >= 0; i--) {
+            if ((tail.get(i) & 0xFF) == 0xFF && (tail.get(i + 1) & 0xFF) == 0xD9) {
+                return new ImageHeader(Format.JPEG, width, height);
+            }
+        }
+        throw new IOException("JPEG image is truncated.");
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Image is truncated.");
+            }
+        }
+        return buffer.flip();
+    }
+
+}
@@ -0,0 +1,159 @@
+package be.jorisg.ultrastarorganizer.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Media formats recognized by the magic bytes at the start of a file. The extension of the file and the
+ * mime database of the system are not used.
+ */
+public enum MediaType {
+
+    MP3(Kind.AUDIO),
+    MP4(Kind.VIDEO),
+    MATROSKA(Kind.VIDEO),
+    AVI(Kind.VIDEO),
+    FLV(Kind.VIDEO),
+    MPEG_PS(Kind.VIDEO),
+    JPEG(Kind.IMAGE),
+    PNG(Kind.IMAGE);
+
+    public enum Kind {
+        AUDIO, VIDEO, IMAGE
+    }
+
+    private static final int HEADER_SIZE = 4096;
+
+    // mpeg audio layer III, bitrates in kbps by [version 1 or 2][bitrate index]
+    private static final int[][] BITRATES = {
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+    };
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    private final Kind kind;
+
+    MediaType(Kind kind) {
+        this.kind = kind;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * The type of the given file, or null if the format is not recognized.
+     */
+    public static MediaType detect(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.read(buffer, 0);
+        }
+        return detect(buffer.flip());
+    }
+
+    private static MediaType detect(ByteBuffer b) {
+        if (startsWith(b, 0, 0xFF, 0xD8, 0xFF)) {
+            return JPEG;
+        }
+        if (startsWith(b, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return PNG;
+        }
+        if (startsWith(b, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            return MATROSKA;
+        }
+        if (startsWith(b, 0, 'R', 'I', 'F', 'F') && startsWith(b, 8, 'A', 'V', 'I', ' ')) {
+            return AVI;
+        }
+        if (startsWith(b, 0, 'F', 'L', 'V', 0x01)) {
+            return FLV;
+        }
+        // pack header or sequence header of a video stream
+        if (startsWith(b, 0, 0x00, 0x00, 0x01, 0xBA) || startsWith(b, 0, 0x00, 0x00, 0x01, 0xB3)) {
+            return MPEG_PS;
+        }
+        if (isQuickTime(b)) {
+            return MP4;
+        }
+        if (startsWith(b, 0, 'I', 'D', '3') || isMpegAudio(b)) {
+            return MP3;
+        }
+        return null;
+    }
+
+    //
+
+    /**
+     * The first box of an mp4 file is ftyp, older QuickTime files can start with other boxes.
+     */
+    private static boolean isQuickTime(ByteBuffer b) {
+        if (b.limit() < 8) {
+            return false;
+        }
+        String type = new String(new byte[]{b.get(4), b.get(5), b.get(6), b.get(7)}, StandardCharsets.ISO_8859_1);
+        return type.equals("ftyp") || type.equals("moov") || type.equals("mdat")
+                || type.equals("wide") || type.equals("free") || type.equals("skip");
+    }
+
+    /**
+     * A file without ID3 tag starts with a frame, after optional padding. The frame that follows is checked
+     * as well when it is in the buffer, so random data is not mistaken for audio.
+     */
+    private static boolean isMpegAudio(ByteBuffer b) {
+        int offset = 0;
+        while (offset < b.limit() && b.get(offset) == 0) {
+            offset++;
+        }
+
+        int length = frameLength(b, offset);
+        if (length <= 0) {
+            return false;
+        }
+        return offset + length + 4 > b.limit() || frameLength(b, offset + length) > 0;
+    }
+
+    /**
+     * The length of the layer III frame at the given offset, or -1 if there is no valid frame header.
+     */
+    private static int frameLength(ByteBuffer b, int offset) {
+        if (offset + 4 > b.limit()) {
+            return -1;
+        }
+
+        int header = b.getInt(offset);
+        if ((header >>> 21) != 0x7FF) {
+            return -1;
+        }
+
+        int version = (header >>> 19) & 0x3; // 0 = 2.5, 1 = reserved, 2 = 2, 3 = 1
+        int layer = (header >>> 17) & 0x3; // 1 = layer III
+        int bitrate = (header >>> 12) & 0xF;
+        int sampleRate = (header >>> 10) & 0x3;
+        int padding = (header >>> 9) & 0x1;
+        if (version == 1 || layer != 1 || bitrate == 0 || bitrate == 0xF || sampleRate == 3) {
+            return -1;
+        }
+
+        int rate = SAMPLE_RATES[sampleRate] >> (version == 3 ? 0 : version == 2 ? 1 : 2);
+        int kbps = BITRATES[version == 3 ? 0 : 1][bitrate];
+        int samples = version == 3 ? 144 : 72;
+        return samples * kbps * 1000 / rate + padding;
+    }
+
+    private static boolean startsWith(ByteBuffer b, int offset, int... bytes) {
+        if (offset + bytes.length > b.limit()) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if ((b.get(offset + i) & 0xFF) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -42,10 +42,10 @@ public class Utils {
         }).collect(Collectors.toList());
     }
 
-    private static boolean verify(File file, String... mediaTypes) {
+    private static boolean verify(File file, MediaType.Kind kind) {
         try {
-            String mediaType = Files.probeContentType(file.toPath());
-            return mediaType != null && Arrays.stream(mediaTypes).anyMatch(mediaType::contains);
+            MediaType mediaType = MediaType.detect(file);
+            return mediaType != null && mediaType.kind() == kind;
         } catch (IOException e) {
             e.printStackTrace(UltrastarOrganizer.out);
         }
@@ -53,15 +53,15 @@ public class Utils {
     }
 
     public static boolean verifyVideo(File file) {
-        return verify(file, "video/", "application/octet-stream");
+        return verify(file, MediaType.Kind.VIDEO);
     }
 
     public static boolean verifyAudio(File file) {
-        return verify(file, "media/mp3", "audio/mpeg");
+        return verify(file, MediaType.Kind.AUDIO);
     }
 
     public static boolean verifyImage(File file) {
-        return verify(file, "image/png", "image/jpeg");
+        return verify(file, MediaType.Kind.IMAGE);
     }
 
     public static boolean shrinkImage(File file, File outputFile, int maxSize) {
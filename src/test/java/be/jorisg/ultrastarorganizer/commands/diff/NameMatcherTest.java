@@ -0,0 +1,75 @@
+package be.jorisg.ultrastarorganizer.commands.diff;
+
+import be.jorisg.ultrastarorganizer.search.EditDistance;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NameMatcherTest {
+
+    @Test
+    void findsNamesWithinOneEdit() {
+        NameMatcher matcher = new NameMatcher(List.of("queen - bohemian rhapsody", "queen - bohemian rapsody",
+                "queen - radio ga ga", "abba - waterloo", "queen - bohemian rhapsody"));
+
+        assertEquals(List.of(0, 4, 1), matcher.matches("queen - bohemian rhapsody"));
+        assertEquals(List.of(1, 0, 4), sorted(matcher.matches("queen - bohemian rapsody"), 1));
+        assertEquals(List.of(3), matcher.matches("abba - waterlo"));
+        assertEquals(List.of(), matcher.matches("abba - dancing queen"));
+    }
+
+    @Test
+    void findsShortNames() {
+        NameMatcher matcher = new NameMatcher(List.of("a", "ab", "b", "abc", ""));
+
+        assertEquals(List.of(0, 1, 2, 4), sorted(matcher.matches("a"), 1));
+        assertEquals(List.of(4, 0, 2), sorted(matcher.matches(""), 1));
+    }
+
+    @Test
+    void sameResultAsComparingAllNames() {
+        Random random = new Random(3);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            names.add(random(random));
+        }
+
+        NameMatcher matcher = new NameMatcher(names);
+        for (int i = 0; i < 500; i++) {
+            String name = random.nextBoolean() ? random(random) : names.get(random.nextInt(names.size()));
+
+            List<Integer> expected = new ArrayList<>();
+            for (int j = 0; j < names.size(); j++) {
+                if (EditDistance.levenshtein(name, names.get(j), 1) <= 1) {
+                    expected.add(j);
+                }
+            }
+            assertEquals(expected, matcher.matches(name).stream().sorted().toList(), name);
+        }
+    }
+
+    //
+
+    /**
+     * The exact matches come first, the order of the other matches is not defined.
+     */
+    private static List<Integer> sorted(List<Integer> matches, int exact) {
+        List<Integer> result = new ArrayList<>(matches.subList(0, exact));
+        matches.subList(exact, matches.size()).stream().sorted().forEach(result::add);
+        return result;
+    }
+
+    private static String random(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = 2 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+}
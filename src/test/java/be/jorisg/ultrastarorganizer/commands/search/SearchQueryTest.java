@@ -0,0 +1,86 @@
+package be.jorisg.ultrastarorganizer.commands.search;
+
+import be.jorisg.ultrastarorganizer.domain.Library;
+import be.jorisg.ultrastarorganizer.domain.LibraryFacets;
+import be.jorisg.ultrastarorganizer.domain.TrackInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SearchQueryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsWordsWithoutKnownFieldAsText() {
+        assertEquals("bohemian rhapsody", SearchQuery.parse("bohemian artist:queen rhapsody").text());
+        assertEquals("foo:bar", SearchQuery.parse("foo:bar year:1975").text());
+        assertEquals("", SearchQuery.parse("  has:video  ").text());
+    }
+
+    @Test
+    void keepsQuotedTextTogether() {
+        assertEquals("we will rock you", SearchQuery.parse("\"we will\" artist:\"queen\" \"rock you\"").text());
+    }
+
+    @Test
+    void rejectsInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("has:lyrics"));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("duet:maybe"));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("bpm>fast"));
+        assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse("year:19..x"));
+    }
+
+    @Test
+    void filtersTracks() throws IOException {
+        track("Queen - Bohemian Rhapsody", "Queen", "Bohemian Rhapsody", "1975", "Rock", "300", true);
+        track("Queen - Radio Ga Ga", "Queen", "Radio Ga Ga", "1984", "Pop, Rock", "200", false);
+        track("ABBA - Waterloo", "ABBA", "Waterloo", "1974", "Pop", "250,5", false);
+
+        // tracks are in the order of their directories
+        LibraryFacets facets = new Library(directory.toFile(), 1).facets();
+
+        assertEquals(List.of("Bohemian Rhapsody", "Radio Ga Ga"), titles(facets, "artist:queen"));
+        assertEquals(List.of("Waterloo", "Bohemian Rhapsody"), titles(facets, "year:1970..1979"));
+        assertEquals(List.of("Bohemian Rhapsody", "Radio Ga Ga"), titles(facets, "genre:rock"));
+        assertEquals(List.of("Waterloo"), titles(facets, "genre:pop -artist:queen"));
+        assertEquals(List.of("Waterloo", "Bohemian Rhapsody"), titles(facets, "bpm>=250"));
+        assertEquals(List.of("Bohemian Rhapsody"), titles(facets, "has:video"));
+        assertEquals(List.of("Waterloo", "Radio Ga Ga"), titles(facets, "-has:video"));
+        assertEquals(List.of(), titles(facets, "duet:true"));
+    }
+
+    //
+
+    private List<String> titles(LibraryFacets facets, String query) {
+        return facets.tracks(SearchQuery.parse(query).filter(facets)).stream().map(TrackInfo::title).toList();
+    }
+
+    private void track(String name, String artist, String title, String year, String genre, String bpm,
+                       boolean video) throws IOException {
+        Path dir = Files.createDirectory(directory.resolve(name));
+        Files.writeString(dir.resolve(name + ".txt"), String.join("\n",
+                "#ARTIST:" + artist,
+                "#TITLE:" + title,
+                "#YEAR:" + year,
+                "#GENRE:" + genre,
+                "#BPM:" + bpm,
+                "#MP3:" + name + ".mp3",
+                "#VIDEO:" + name + ".mp4",
+                ": 0 2 1 la",
+                "E"));
+        Files.createFile(dir.resolve(name + ".mp3"));
+        if (video) {
+            Files.createFile(dir.resolve(name + ".mp4"));
+        }
+    }
+
+}
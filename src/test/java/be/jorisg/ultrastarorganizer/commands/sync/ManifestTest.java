@@ -0,0 +1,102 @@
+package be.jorisg.ultrastarorganizer.commands.sync;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManifestTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void listsVisibleFiles() throws IOException {
+        write("A/A.txt", "song");
+        write("A/A.mp3", "audio");
+        write("A/.hidden", "x");
+        write(".cache/B.txt", "x");
+        write(Manifest.FILE_NAME, "x");
+
+        Manifest manifest = Manifest.load(directory.toFile(), 2);
+        assertEquals(Set.of("A/A.txt", "A/A.mp3"), manifest.entries().keySet());
+
+        Manifest.Entry entry = manifest.entries().get("A/A.txt");
+        assertEquals(4, entry.size());
+        assertEquals(Files.getLastModifiedTime(directory.resolve("A/A.txt")).toMillis(), entry.modified());
+    }
+
+    @Test
+    void comparesContent() throws IOException {
+        write("A/one.txt", "same");
+        write("A/two.txt", "same");
+        write("A/three.txt", "diff");
+
+        Manifest manifest = Manifest.load(directory.toFile(), 1);
+        Manifest.Entry one = manifest.entries().get("A/one.txt");
+        assertTrue(one.sameContent(manifest.entries().get("A/two.txt")));
+        assertFalse(one.sameContent(manifest.entries().get("A/three.txt")));
+    }
+
+    @Test
+    void reusesSavedChecksumsOfUnchangedFiles() throws IOException {
+        Path file = write("A/A.txt", "song");
+        Manifest manifest = Manifest.load(directory.toFile(), 1);
+        long checksum = manifest.entries().get("A/A.txt").checksum();
+        manifest.save();
+
+        // same size and modification time, the saved checksum is used
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.writeString(file, "sing");
+        Files.setLastModifiedTime(file, modified);
+        assertEquals(checksum, Manifest.load(directory.toFile(), 1).entries().get("A/A.txt").checksum());
+
+        // other modification time, the checksum is calculated again
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 2000));
+        assertNotEquals(checksum, Manifest.load(directory.toFile(), 1).entries().get("A/A.txt").checksum());
+    }
+
+    @Test
+    void savesChanges() throws IOException {
+        write("A/A.txt", "song");
+        Manifest manifest = Manifest.load(directory.toFile(), 1);
+        Manifest.Entry entry = manifest.entries().get("A/A.txt");
+        manifest.remove("A/A.txt");
+        manifest.put("B/B.txt", entry);
+        manifest.save();
+
+        // the saved entry is only used when the file has the same size and modification time
+        write("B/B.txt", "song");
+        Files.setLastModifiedTime(directory.resolve("B/B.txt"), FileTime.fromMillis(entry.modified()));
+        assertEquals(entry, Manifest.load(directory.toFile(), 1).entries().get("B/B.txt"));
+    }
+
+    @Test
+    void ignoresBrokenManifest() throws IOException {
+        write("A/A.txt", "song");
+        long checksum = Manifest.load(directory.toFile(), 1).entries().get("A/A.txt").checksum();
+
+        write(Manifest.FILE_NAME, "broken");
+        assertEquals(checksum, Manifest.load(directory.toFile(), 1).entries().get("A/A.txt").checksum());
+    }
+
+    @Test
+    void separatesPathsWithSlashes() {
+        assertEquals("A/B/c.txt", Manifest.relativePath(directory, directory.resolve("A").resolve("B").resolve("c.txt")));
+    }
+
+    //
+
+    private Path write(String path, String content) throws IOException {
+        Path file = directory.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content);
+    }
+
+}
@@ -0,0 +1,72 @@
+package be.jorisg.ultrastarorganizer.domain;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LibraryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsDirectoriesInOrder() throws IOException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            names.add(String.format("Artist %02d - Title", i));
+        }
+
+        // created in random order, so the order of the file system does not match the sorted order
+        List<String> shuffled = new ArrayList<>(names);
+        Collections.shuffle(shuffled, new Random(7));
+        for (String name : shuffled) {
+            track(name, name + ".txt", "#ARTIST:" + name.split(" - ")[0] + "\n#TITLE:Title\n: 0 1 1 la\nE\n");
+        }
+        track("Artist 10 - Title", "Artist 10 - Title (Duet).txt", "#ARTIST:Artist 10\n#TITLE:Title (Duet)\n: 0 1 1 la\nE\n");
+
+        Library library = new Library(directory.toFile(), 8);
+        assertEquals(names, library.trackDirectories().stream().map(td -> td.directory().getName()).toList());
+        assertEquals(names(new Library(directory.toFile(), 1)), names(library));
+        assertEquals(2, library.directoryOf(library.tracks().get(11)).tracks().size());
+    }
+
+    @Test
+    void reportsInvalidTracks() throws IOException {
+        track("A - Song", "A - Song.txt", "#ARTIST:A\n#TITLE:Song\n: 0 1 1 la\nE\n");
+        track("B - Broken", "B - Broken.txt", "#TITLE:Broken\n: 0 1 1 la\nE\n");
+        track("C - Half", "C - Half.txt", "#ARTIST:C\n#TITLE:Half\n: 0 1 1 la\nE\n");
+        track("C - Half", "C - Other.txt", "#ARTIST:C\n");
+        track("D - Song", "D - Song.txt", "#ARTIST:D\n#TITLE:Song\n: 0 1 1 la\nE\n");
+
+        Library library = new Library(directory.toFile(), 4);
+        List<String> issues = library.reload();
+        assertEquals(List.of(
+                "An error occured for file '" + Path.of("B - Broken", "B - Broken.txt") + "': Required headers are missing from file.",
+                "An error occured for file '" + Path.of("C - Half", "C - Other.txt") + "': Required headers are missing from file."
+        ), issues);
+
+        // directories without valid tracks are left out, the others keep their valid tracks
+        assertEquals(List.of("A - Song", "C - Half", "D - Song"), names(library));
+    }
+
+    //
+
+    private static List<String> names(Library library) {
+        return library.tracks().stream().map(TrackInfo::name).toList();
+    }
+
+    private void track(String directoryName, String fileName, String content) throws IOException {
+        Path dir = Files.createDirectories(directory.resolve(directoryName));
+        Files.writeString(dir.resolve(fileName), content);
+    }
+
+}
@@ -0,0 +1,116 @@
+package be.jorisg.ultrastarorganizer.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NoteLyricTest {
+
+    @Test
+    void parsesCanonicalLines() {
+        assertEquals(new NoteLyric(NoteLyric.NoteType.NORMAL, 12, 4, 7, "la "), NoteLyric.fromString(": 12 4 7 la "));
+        assertEquals(new NoteLyric(NoteLyric.NoteType.GOLDEN, 0, 2, -3, " ah"), NoteLyric.fromString("* 0 2 -3  ah"));
+        assertEquals(new NoteLyric(NoteLyric.NoteType.FREESTYLE, 5, 1, 0, ""), NoteLyric.fromString("F 5 1 0"));
+        assertEquals(new NoteLyric(NoteLyric.NoteType.RAP, 5, 1, 0, "yo"), NoteLyric.fromString("R\t5\t1\t0\tyo"));
+        assertEquals(new NoteLyric(NoteLyric.NoteType.GOLDEN_RAP, 5, 1, 0, "a b"), NoteLyric.fromString("G 5 1 0 a\tb"));
+    }
+
+    @Test
+    void parsesBreaks() {
+        assertEquals(new NoteLyric(NoteLyric.NoteType.BREAK, 40, 0, 0, ""), NoteLyric.fromString("- 40"));
+        assertEquals(new NoteLyric(NoteLyric.NoteType.BREAK, 40, 0, 0, ""), NoteLyric.fromString("- 40 44"));
+        assertEquals(new NoteLyric(NoteLyric.NoteType.BREAK, 40, 0, 0, ""), NoteLyric.fromString("-40"));
+    }
+
+    @Test
+    void rejectsInvalidLines() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> NoteLyric.fromString("X 1 2 3 la"));
+        assertEquals("Invalid note lyric line: 'X 1 2 3 la'. Unknown note type: X.", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class, () -> NoteLyric.fromString(": a 2 3 la"));
+        assertEquals("Invalid note lyric line: ': a 2 3 la'. Invalid beat: a.", e.getMessage());
+    }
+
+    @Test
+    void sameResultAsSplitParser() {
+        Random random = new Random(42);
+        String[] parts = {":", "*", "F", "-", "R", "G", "X", "0", "00", "7", "-3", "+4", "12", "2147483648",
+                "a", "la", "", " ", "\t"};
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(7);
+            for (int p = 0; p < count; p++) {
+                sb.append(parts[random.nextInt(parts.length)]);
+                sb.append(random.nextInt(8) == 0 ? "\t" : random.nextInt(8) == 0 ? "  " : " ");
+            }
+            if (random.nextBoolean()) {
+                sb.setLength(Math.max(0, sb.length() - 1));
+            }
+
+            String line = sb.toString();
+            assertEquals(parse(() -> reference(line)), parse(() -> NoteLyric.fromString(line)), line);
+        }
+    }
+
+    //
+
+    private static String parse(Supplier<NoteLyric> parser) {
+        try {
+            NoteLyric n = parser.get();
+            return n.type() + " " + n.beat() + " " + n.duration() + " " + n.note() + " [" + n.text() + "]";
+        } catch (IllegalArgumentException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        } catch (RuntimeException e) {
+            // the jvm drops the message of exceptions that are thrown often
+            return e.getClass().getName();
+        }
+    }
+
+    /**
+     * The split based parser that was used before the tokenizer.
+     */
+    private static NoteLyric reference(String str) {
+        str = str.replaceAll(Pattern.quote("\t"), " ");
+        str = str.stripLeading();
+        String[] args = str.split(Pattern.quote(" "));
+
+        if (args[0].length() > 1) {
+            if (!args[0].startsWith("-")) {
+                throw new IllegalArgumentException("Invalid note lyric line: '" + str + "'. ");
+            }
+            int beat = Integer.parseInt(args[0].substring(1));
+            return new NoteLyric(NoteLyric.NoteType.BREAK, beat, 0, 0, "");
+        }
+
+        NoteLyric.NoteType type = NoteLyric.NoteType.fromKey(args[0]);
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid note lyric line: '" + str + "'. Unknown note type: " + args[0] + ".");
+        }
+
+        int beat;
+        try {
+            beat = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid note lyric line: '" + str + "'. Invalid beat: " + args[1] + ".");
+        }
+        if (type == NoteLyric.NoteType.BREAK) {
+            return new NoteLyric(type, beat, 0, 0, "");
+        }
+
+        int duration = Integer.parseInt(args[2]);
+        int note = Integer.parseInt(args[3]);
+
+        String prefix = type.key + " " + beat + " " + duration + " " + note + " ";
+        String text = "";
+        if (str.length() > prefix.length()) {
+            text = str.substring(prefix.length());
+        }
+
+        return new NoteLyric(type, beat, duration, note, text);
+    }
+
+}
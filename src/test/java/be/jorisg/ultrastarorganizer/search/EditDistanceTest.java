@@ -0,0 +1,67 @@
+package be.jorisg.ultrastarorganizer.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EditDistanceTest {
+
+    @Test
+    void knownDistances() {
+        assertEquals(0, EditDistance.levenshtein("queen", "queen", 2));
+        assertEquals(1, EditDistance.levenshtein("queen", "quen", 2));
+        assertEquals(1, EditDistance.levenshtein("queen", "queem", 2));
+        assertEquals(2, EditDistance.levenshtein("kraftwerk", "craftwerc", 2));
+        assertEquals(3, EditDistance.levenshtein("kitten", "sitting", 3));
+        assertEquals(3, EditDistance.levenshtein("", "abc", 3));
+    }
+
+    @Test
+    void stopsAboveMax() {
+        assertEquals(2, EditDistance.levenshtein("kitten", "sitting", 1));
+        assertEquals(2, EditDistance.levenshtein("a", "abc", 1));
+        assertEquals(1, EditDistance.levenshtein("abc", "xyz", 0));
+    }
+
+    @Test
+    void sameResultAsFullMatrix() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            String a = random(random);
+            String b = random(random);
+            int max = random.nextInt(4);
+            assertEquals(Math.min(full(a, b), max + 1), EditDistance.levenshtein(a, b, max), a + " / " + b + " / " + max);
+        }
+    }
+
+    //
+
+    private static String random(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(9);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    private static int full(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+}
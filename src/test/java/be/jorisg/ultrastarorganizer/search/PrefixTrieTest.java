@@ -0,0 +1,65 @@
+package be.jorisg.ultrastarorganizer.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PrefixTrieTest {
+
+    @Test
+    void completesIgnoringCase() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("Queen");
+        trie.add("Queens of the Stone Age");
+        trie.add("Quiet Riot");
+        trie.add("ABBA");
+
+        assertEquals(List.of("Queen", "Queens of the Stone Age"), trie.complete("QUEE", 10));
+        assertEquals(List.of("Queen", "Queens of the Stone Age", "Quiet Riot"), trie.complete("q", 10));
+        assertEquals(List.of("ABBA"), trie.complete("abba", 10));
+        assertEquals(List.of(), trie.complete("x", 10));
+        assertEquals(4, trie.size());
+    }
+
+    @Test
+    void respectsLimitInOrder() {
+        PrefixTrie trie = new PrefixTrie();
+        List.of("bc", "b", "ba", "bab", "bb").forEach(trie::add);
+
+        assertEquals(List.of("b", "ba", "bab"), trie.complete("b", 3));
+        assertEquals(List.of("b", "ba", "bab", "bb", "bc"), trie.complete("", 10));
+    }
+
+    @Test
+    void keepsValuesUntilRemovedAsOftenAsAdded() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("Muse");
+        trie.add("Muse");
+        trie.add("MUSE");
+        assertEquals(2, trie.size());
+
+        trie.remove("Muse");
+        assertEquals(List.of("MUSE", "Muse"), trie.complete("mu", 10));
+
+        trie.remove("Muse");
+        assertEquals(List.of("MUSE"), trie.complete("mu", 10));
+
+        trie.remove("MUSE");
+        assertEquals(List.of(), trie.complete("", 10));
+        assertEquals(0, trie.size());
+    }
+
+    @Test
+    void ignoresRemovalOfMissingValues() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("Muse");
+        trie.remove("Mu");
+        trie.remove("Muses");
+        trie.remove("Blur");
+        assertEquals(List.of("Muse"), trie.complete("m", 10));
+        assertEquals(1, trie.size());
+    }
+
+}
@@ -0,0 +1,72 @@
+package be.jorisg.ultrastarorganizer.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImageHeaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsPng() throws IOException {
+        Path file = image("png", 640, 360);
+        assertEquals(new ImageHeader(ImageHeader.Format.PNG, 640, 360), ImageHeader.read(file.toFile()));
+    }
+
+    @Test
+    void readsJpeg() throws IOException {
+        Path file = image("jpg", 500, 480);
+        assertEquals(new ImageHeader(ImageHeader.Format.JPEG, 500, 480), ImageHeader.read(file.toFile()));
+    }
+
+    @Test
+    void acceptsGarbageAfterJpegEnd() throws IOException {
+        Path file = image("jpg", 64, 64);
+        Files.write(file, new byte[]{1, 2, 3, 4}, StandardOpenOption.APPEND);
+        assertEquals(new ImageHeader(ImageHeader.Format.JPEG, 64, 64), ImageHeader.read(file.toFile()));
+    }
+
+    @Test
+    void rejectsTruncatedImages() throws IOException {
+        for (String format : new String[]{"png", "jpg"}) {
+            Path file = image(format, 64, 64);
+            byte[] bytes = Files.readAllBytes(file);
+            for (int length : new int[]{0, 4, 20, bytes.length / 2, bytes.length - 1}) {
+                Files.write(file, Arrays.copyOf(bytes, length));
+                assertThrows(IOException.class, () -> ImageHeader.read(file.toFile()), format + " " + length);
+            }
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("cover.gif");
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "gif", file.toFile());
+        assertThrows(IOException.class, () -> ImageHeader.read(file.toFile()));
+    }
+
+    //
+
+    private Path image(String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            image.setRGB(x, x % height, 0xFF8800);
+        }
+        Path file = directory.resolve("cover." + format);
+        ImageIO.write(image, format, file.toFile());
+        return file;
+    }
+
+}
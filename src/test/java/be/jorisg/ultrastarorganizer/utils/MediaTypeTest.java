@@ -0,0 +1,90 @@
+package be.jorisg.ultrastarorganizer.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MediaTypeTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void detectsImages() throws IOException {
+        for (String format : new String[]{"png", "jpg"}) {
+            Path file = directory.resolve("cover." + format);
+            ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), format, file.toFile());
+            assertEquals(format.equals("png") ? MediaType.PNG : MediaType.JPEG, detect(file));
+        }
+    }
+
+    @Test
+    void detectsVideos() throws IOException {
+        assertEquals(MediaType.MP4, detect(bytes(0, 0, 0, 0x20, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm')));
+        assertEquals(MediaType.MATROSKA, detect(bytes(0x1A, 0x45, 0xDF, 0xA3, 0x01)));
+        assertEquals(MediaType.AVI, detect(bytes('R', 'I', 'F', 'F', 0, 0, 0, 0, 'A', 'V', 'I', ' ')));
+        assertEquals(MediaType.FLV, detect(bytes('F', 'L', 'V', 0x01, 0x05)));
+        assertEquals(MediaType.MPEG_PS, detect(bytes(0x00, 0x00, 0x01, 0xBA, 0x44)));
+        assertEquals(MediaType.Kind.VIDEO, detect(bytes(0x00, 0x00, 0x01, 0xB3)).kind());
+    }
+
+    @Test
+    void detectsAudio() throws IOException {
+        assertEquals(MediaType.MP3, detect(bytes('I', 'D', '3', 0x04, 0x00)));
+
+        // two frames of 128 kbps at 44.1 kHz, 417 bytes each, after some padding
+        byte[] frames = new byte[3 + 417 * 2];
+        for (int offset = 3; offset < frames.length; offset += 417) {
+            frames[offset] = (byte) 0xFF;
+            frames[offset + 1] = (byte) 0xFB;
+            frames[offset + 2] = (byte) 0x90;
+            frames[offset + 3] = (byte) 0x00;
+        }
+        assertEquals(MediaType.MP3, detect(write(frames)));
+
+        // a frame header that is not followed by another frame
+        frames[3 + 417 + 1] = 0;
+        assertNull(detect(write(frames)));
+    }
+
+    @Test
+    void ignoresOtherFiles() throws IOException {
+        assertNull(detect(write(new byte[0])));
+        assertNull(detect(write("#TITLE:Song\n#ARTIST:Artist\n".getBytes())));
+
+        Random random = new Random(11);
+        byte[] data = new byte[4096];
+        for (int i = 0; i < 2000; i++) {
+            random.nextBytes(data);
+            assertNull(detect(write(data)));
+        }
+    }
+
+    //
+
+    private MediaType detect(Path file) throws IOException {
+        return MediaType.detect(file.toFile());
+    }
+
+    private Path bytes(int... values) throws IOException {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return write(data);
+    }
+
+    private Path write(byte[] data) throws IOException {
+        return Files.write(directory.resolve("media"), data);
+    }
+
+}